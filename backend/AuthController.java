@@ -1,6 +1,8 @@
 package com.hungerexpress.auth;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -35,4 +37,12 @@ public class AuthController {
     public ResponseEntity<AuthResponse> refresh(@RequestBody RefreshRequest req){
         return ResponseEntity.ok(auth.refresh(req.refreshToken()));
     }
+
+    // Hashing pool saturated: tell the client when to come back instead of holding the request
+    @ExceptionHandler(HashingBusyException.class)
+    public ResponseEntity<Void> busy(HashingBusyException e){
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .build();
+    }
 }
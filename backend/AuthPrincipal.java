@@ -0,0 +1,11 @@
+package com.hungerexpress.common;
+
+/**
+ * Identity of the caller as carried by the verified access token.
+ */
+public record AuthPrincipal(Long id, String email, String role) {
+
+    public boolean hasRole(String r) {
+        return r.equals(role);
+    }
+}
@@ -2,46 +2,75 @@ package com.hungerexpress.auth;
 
 import com.hungerexpress.user.User;
 import com.hungerexpress.user.UserRepository;
+import com.hungerexpress.common.TtlCache;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class AuthService {
     private final UserRepository users;
-    private final PasswordEncoder encoder;
+    private final PasswordHashing hashing;
     private final JwtService jwt;
     private final RefreshTokenRepository refreshTokens;
+    private final TransactionTemplate tx;
 
-    @Transactional
+    private static final String NO_FAMILY = "";
+
+    // Refresh tokens known to be dead (rotated, revoked, expired or unknown) -> family to revoke on reuse,
+    // or NO_FAMILY when there is nothing left to do. Lets replays be rejected without a database lookup.
+    private final TtlCache<String, String> deadTokens = new TtlCache<>(100_000, Duration.ofDays(30).toMillis());
+
+    // Signup and login hash before opening a transaction, so a request queued for the hashing pool
+    // never holds a database connection while it waits.
     public AuthResponse signup(SignupRequest req){
         if (users.existsByEmail(req.email())) throw new IllegalArgumentException("Email already registered");
         String role = req.role() == null ? "CUSTOMER" : req.role();
-        User u = User.builder()
-                .email(req.email())
-                .password(encoder.encode(req.password()))
-                .fullName(req.fullName())
-                .enabled(true)
-                .role(role)
-                .build();
-        users.save(u);
-        String token = jwt.generate(Map.of("role", role, "uid", u.getId()), u.getEmail());
-        String rt = issueRefreshToken(u);
-        return new AuthResponse(token, rt, u.getEmail(), role, u.getFullName());
+        String hash = hashing.encode(req.password());
+        return tx.execute(status -> {
+            User u = User.builder()
+                    .email(req.email())
+                    .password(hash)
+                    .fullName(req.fullName())
+                    .enabled(true)
+                    .role(role)
+                    .build();
+            users.save(u);
+            String token = jwt.generate(Map.of("role", role, "uid", u.getId()), u.getEmail());
+            String rt = issueRefreshToken(u);
+            return new AuthResponse(token, rt, u.getEmail(), role, u.getFullName());
+        });
     }
 
-    @Transactional
     public AuthResponse login(AuthRequest req){
-        User u = users.findByEmail(req.email()).orElseThrow(() -> new IllegalArgumentException("Invalid credentials"));
-        if (!encoder.matches(req.password(), u.getPassword())) throw new IllegalArgumentException("Invalid credentials");
-        String role = u.getRole() != null ? u.getRole() : "CUSTOMER";
-        String token = jwt.generate(Map.of("role", role, "uid", u.getId()), u.getEmail());
-        String rt = issueRefreshToken(u);
-        return new AuthResponse(token, rt, u.getEmail(), role, u.getFullName());
+        User found = users.findByEmail(req.email()).orElseThrow(() -> new IllegalArgumentException("Invalid credentials"));
+        if (!hashing.matches(req.password(), found.getPassword())) throw new IllegalArgumentException("Invalid credentials");
+        // The cost factor was raised since this hash was made: store a fresh one while we have the password
+        String upgraded = hashing.needsRehash(found.getPassword()) ? hashing.encode(req.password()) : null;
+        return tx.execute(status -> {
+            User u = users.findById(found.getId()).orElseThrow(() -> new IllegalArgumentException("Invalid credentials"));
+            if (upgraded != null && found.getPassword().equals(u.getPassword())) {
+                u.setPassword(upgraded);
+                users.save(u);
+                log.info("Rehashed password for user {} with the current cost", u.getId());
+            }
+            String role = u.getRole() != null ? u.getRole() : "CUSTOMER";
+            String token = jwt.generate(Map.of("role", role, "uid", u.getId()), u.getEmail());
+            String rt = issueRefreshToken(u);
+            return new AuthResponse(token, rt, u.getEmail(), role, u.getFullName());
+        });
     }
 
     @Transactional(readOnly = true)
@@ -52,28 +81,81 @@ public class AuthService {
         return new ProfileResponse(u.getId(), u.getEmail(), u.getFullName(), role);
     }
 
-    @Transactional
+    /**
+     * Rotate a refresh token. The old token is retired with a conditional update, so it can be used
+     * exactly once; presenting it again (or any revoked token) is treated as theft and revokes every
+     * token of its family. Tokens known to be dead are rejected from memory without a lookup.
+     */
+    @Transactional(noRollbackFor = IllegalArgumentException.class)
     public AuthResponse refresh(String refreshToken){
-        RefreshToken rt = refreshTokens.findByToken(refreshToken).orElseThrow(() -> new IllegalArgumentException("Invalid refresh token"));
-        if (rt.isRevoked() || rt.getExpiresAt().isBefore(java.time.Instant.now())){
-            throw new IllegalArgumentException("Invalid refresh token");
+        if (refreshToken == null || refreshToken.isBlank()) throw invalidRefreshToken();
+        String deadFamily = deadTokens.get(refreshToken);
+        if (deadFamily != null) {
+            if (!deadFamily.isEmpty()) revokeFamily(deadFamily, refreshToken);
+            throw invalidRefreshToken();
         }
+
+        RefreshToken rt = refreshTokens.findByToken(refreshToken).orElse(null);
+        if (rt == null || rt.getExpiresAt().isBefore(Instant.now())) {
+            deadTokens.put(refreshToken, NO_FAMILY);
+            throw invalidRefreshToken();
+        }
+        if (rt.isRevoked() || refreshTokens.revokeIfActive(rt.getId(), Instant.now()) == 0) {
+            if (rt.getFamilyId() != null) revokeFamily(rt.getFamilyId(), refreshToken);
+            else deadTokens.put(refreshToken, NO_FAMILY);
+            throw invalidRefreshToken();
+        }
+
         User u = rt.getUser();
         String role = u.getRole() != null ? u.getRole() : "CUSTOMER";
         String newAccess = jwt.generate(Map.of("role", role, "uid", u.getId()), u.getEmail());
-        // rotate: revoke old and issue new
-        rt.setRevoked(true);
-        refreshTokens.save(rt);
-        String newRt = issueRefreshToken(u);
+        String family = rt.getFamilyId() != null ? rt.getFamilyId() : UUID.randomUUID().toString();
+        String newRt = issueRefreshToken(u, family);
+        // Remember the retired token only once the rotation is durable
+        afterCommit(() -> deadTokens.put(refreshToken, family));
         return new AuthResponse(newAccess, newRt, u.getEmail(), role, u.getFullName());
     }
 
+    // One statement for the whole family; afterwards its tokens are dead without a second revoke
+    private void revokeFamily(String familyId, String presented){
+        int revoked = refreshTokens.revokeFamily(familyId, Instant.now());
+        log.warn("Refresh token reuse detected, revoked {} live tokens of family {}", revoked, familyId);
+        List<String> tokens = refreshTokens.findTokensByFamily(familyId);
+        afterCommit(() -> {
+            tokens.forEach(t -> deadTokens.put(t, NO_FAMILY));
+            deadTokens.put(presented, NO_FAMILY);
+        });
+    }
+
+    private static void afterCommit(Runnable r){
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            r.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                r.run();
+            }
+        });
+    }
+
+    private static IllegalArgumentException invalidRefreshToken(){
+        return new IllegalArgumentException("Invalid refresh token");
+    }
+
+    // Each login starts a new family; rotations carry it forward
     private String issueRefreshToken(User user){
-        String token = java.util.UUID.randomUUID().toString();
+        return issueRefreshToken(user, UUID.randomUUID().toString());
+    }
+
+    private String issueRefreshToken(User user, String familyId){
+        String token = UUID.randomUUID().toString();
         RefreshToken rt = RefreshToken.builder()
                 .user(user)
                 .token(token)
-                .expiresAt(java.time.Instant.now().plus(java.time.Duration.ofDays(30)))
+                .familyId(familyId)
+                .expiresAt(Instant.now().plus(Duration.ofDays(30)))
                 .revoked(false)
                 .build();
         refreshTokens.save(rt);
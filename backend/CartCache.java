@@ -0,0 +1,329 @@
+package com.hungerexpress.cart;
+
+import com.hungerexpress.dto.CartDTO;
+import com.hungerexpress.dto.CartItemDTO;
+import com.hungerexpress.common.ChangeVersions;
+import com.hungerexpress.service.CartService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Read-through, write-coalescing cache of per-user cart aggregates in front of {@link CartService}.
+ *
+ * getCart and getCartItemCount are served from memory after the first load. Quantity changes and
+ * removals are applied to the aggregate immediately (totals maintained incrementally) and queued;
+ * the flush task writes only the latest quantity per line, so a burst of clicks becomes one write.
+ * After a flush the aggregate is re-read once to pick up the authoritative totals. Adds and clears
+ * need the database (menu lookups, row deletes) and are written through after draining the queue.
+ * Pending writes are flushed on shutdown.
+ *
+ * A failed write-back is requeued (unless a newer change to the same line superseded it) and retried
+ * on the next flush; after max-flush-failures consecutive failures the queued changes are given up,
+ * logged as an error and counted in hungerexpress.cart.flush.dropped, and the aggregate is reloaded so
+ * the client's next read (and ETag) shows what was actually saved.
+ *
+ * The aggregate is node-local. Changes made through another node, or by code calling CartService
+ * directly, are not seen here until the aggregate is reloaded, which happens at the latest
+ * app.cart.cache-max-age-ms after the last load (default 30s) when nothing is queued; a reload that
+ * finds a different cart bumps the cart's change version, so conditional GETs stop answering 304 for
+ * the old one. Route a user's cart requests to one node (sticky sessions) where that window matters.
+ */
+@Slf4j
+@Component
+public class CartCache {
+
+    private final CartService carts;
+    private final ChangeVersions changes;
+    private final long idleTtlMs;
+    private final long maxAgeMs;
+    private final int maxFlushFailures;
+    private final Counter flushFailures;
+    private final Counter flushDropped;
+    private final Map<Long, Entry> byUser = new ConcurrentHashMap<>();
+
+    public CartCache(CartService carts, ChangeVersions changes, MeterRegistry meters,
+                     @Value("${app.cart.cache-idle-ms:1800000}") long idleTtlMs,
+                     @Value("${app.cart.cache-max-age-ms:30000}") long maxAgeMs,
+                     @Value("${app.cart.max-flush-failures:5}") int maxFlushFailures) {
+        this.carts = carts;
+        this.changes = changes;
+        this.idleTtlMs = idleTtlMs;
+        this.maxAgeMs = maxAgeMs;
+        this.maxFlushFailures = maxFlushFailures;
+        this.flushFailures = meters.counter("hungerexpress.cart.flush.failures");
+        this.flushDropped = meters.counter("hungerexpress.cart.flush.dropped");
+    }
+
+    public CartDTO getCart(Long userId) {
+        return withEntry(userId, e -> copy(e.load()));
+    }
+
+    public long getCartItemCount(Long userId) {
+        return withEntry(userId, e -> {
+            Integer n = e.load().getTotalItems();
+            return n == null ? 0L : n.longValue();
+        });
+    }
+
+    /**
+     * ETag of the user's cart. Taken after the max-age check, so a reload that finds changes made
+     * outside this node (another node, checkout, direct writes) moves the tag before it is compared.
+     */
+    public String etag(Long userId) {
+        return withEntry(userId, e -> {
+            e.load();
+            return changes.etag(ChangeVersions.userCart(userId));
+        });
+    }
+
+    public CartItemDTO addToCart(Long userId, Long menuItemId, Integer quantity) {
+        return withEntry(userId, e -> {
+            e.flush();
+            CartItemDTO added = carts.addToCart(userId, menuItemId, quantity);
+            e.invalidate();
+            return added;
+        });
+    }
+
+    /** Returns the updated line, or null if the quantity dropped to zero and the line was removed. */
+    public CartItemDTO updateCartItem(Long userId, Long cartItemId, Integer quantity) {
+        return withEntry(userId, e -> {
+            CartItemDTO line = find(e.load(), cartItemId);
+            if (line == null) {
+                // Not in our view of the cart: let the service decide (and throw) as before
+                e.flush();
+                CartItemDTO res = carts.updateCartItem(userId, cartItemId, quantity);
+                e.invalidate();
+                return res;
+            }
+            int qty = quantity == null ? 0 : Math.max(0, quantity);
+            e.setQuantity(line, qty);
+            e.pending.put(cartItemId, qty);
+            return qty == 0 ? null : copy(line);
+        });
+    }
+
+    public void removeFromCart(Long userId, Long cartItemId) {
+        withEntry(userId, e -> {
+            CartItemDTO line = find(e.load(), cartItemId);
+            if (line == null) {
+                e.flush();
+                carts.removeFromCart(userId, cartItemId);
+                e.invalidate();
+            } else {
+                e.setQuantity(line, 0);
+                e.pending.put(cartItemId, 0);
+            }
+            return null;
+        });
+    }
+
+    public void clearCart(Long userId) {
+        withEntry(userId, e -> {
+            e.pending.clear();
+            carts.clearCart(userId);
+            e.cart = new CartDTO(new ArrayList<>(), 0, 0.0, 0.0, 0.0, 0.0);
+            e.changed();
+            return null;
+        });
+    }
+
+    /** Write queued quantity changes and drop aggregates nobody has touched for a while. */
+    @Scheduled(fixedDelayString = "${app.cart.flush-ms:500}")
+    public void flushPending() {
+        long cutoff = System.currentTimeMillis() - idleTtlMs;
+        byUser.forEach((uid, e) -> {
+            e.lock.lock();
+            try {
+                if (!e.pending.isEmpty()) {
+                    e.flush();
+                } else if (e.lastAccess < cutoff) {
+                    e.retired = true;
+                    byUser.remove(uid, e);
+                }
+            } finally {
+                e.lock.unlock();
+            }
+        });
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        byUser.values().forEach(e -> {
+            e.lock.lock();
+            try {
+                e.flush();
+            } finally {
+                e.lock.unlock();
+            }
+        });
+    }
+
+    // Run under the user's entry lock, retrying if the entry was evicted while we waited for it
+    private <T> T withEntry(Long userId, Function<Entry, T> fn) {
+        while (true) {
+            Entry e = byUser.computeIfAbsent(userId, Entry::new);
+            e.lock.lock();
+            try {
+                if (e.retired) continue;
+                e.lastAccess = System.currentTimeMillis();
+                return fn.apply(e);
+            } finally {
+                e.lock.unlock();
+            }
+        }
+    }
+
+    private static CartItemDTO find(CartDTO cart, Long cartItemId) {
+        for (CartItemDTO it : cart.getItems()) {
+            if (Objects.equals(it.getId(), cartItemId)) return it;
+        }
+        return null;
+    }
+
+    private static CartDTO copy(CartDTO c) {
+        List<CartItemDTO> items = new ArrayList<>(c.getItems().size());
+        for (CartItemDTO it : c.getItems()) items.add(copy(it));
+        return new CartDTO(items, c.getTotalItems(), c.getSubtotal(), c.getDeliveryFee(), c.getTax(), c.getTotal());
+    }
+
+    private static CartItemDTO copy(CartItemDTO it) {
+        return new CartItemDTO(it.getId(), it.getMenuItemId(), it.getMenuItemName(), it.getRestaurantId(),
+                it.getRestaurantName(), it.getPrice(), it.getQuantity(), it.getSubtotal(), it.getImageUrl());
+    }
+
+    // Lines and totals as the client sees them
+    private static boolean sameCart(CartDTO a, CartDTO b) {
+        if (a.getItems().size() != b.getItems().size()) return false;
+        for (int i = 0; i < a.getItems().size(); i++) {
+            CartItemDTO x = a.getItems().get(i);
+            CartItemDTO y = b.getItems().get(i);
+            if (!Objects.equals(x.getId(), y.getId()) || !Objects.equals(x.getMenuItemId(), y.getMenuItemId())
+                    || !Objects.equals(x.getQuantity(), y.getQuantity()) || !Objects.equals(x.getPrice(), y.getPrice())) {
+                return false;
+            }
+        }
+        return Objects.equals(a.getSubtotal(), b.getSubtotal()) && Objects.equals(a.getDeliveryFee(), b.getDeliveryFee())
+                && Objects.equals(a.getTax(), b.getTax()) && Objects.equals(a.getTotal(), b.getTotal());
+    }
+
+    private static double nz(Double d) {
+        return d == null ? 0.0 : d;
+    }
+
+    /**
+     * Per-user aggregate; every access holds the entry's lock. A ReentrantLock rather than a monitor,
+     * because the lock is held across database calls and a virtual thread blocked inside
+     * synchronized would pin its carrier.
+     */
+    private final class Entry {
+        final ReentrantLock lock = new ReentrantLock();
+        final Long userId;
+        // Latest requested quantity per cart line, in arrival order; 0 means remove
+        final Map<Long, Integer> pending = new LinkedHashMap<>();
+        CartDTO cart;
+        long loadedAt;
+        // Tax as a share of subtotal, taken from the last authoritative load
+        double taxRate;
+        int failedFlushes;
+        boolean retired;
+        long lastAccess = System.currentTimeMillis();
+
+        Entry(Long userId) {
+            this.userId = userId;
+        }
+
+        CartDTO load() {
+            CartDTO expired = null;
+            // Past max age with nothing queued: reload to pick up changes made outside this node
+            if (cart != null && pending.isEmpty() && System.currentTimeMillis() - loadedAt > maxAgeMs) {
+                expired = cart;
+                cart = null;
+            }
+            if (cart == null) {
+                cart = copy(carts.getCart(userId));
+                // Clients may hold a tag for a cart this node never saw (first load, after idle eviction),
+                // so only a max-age re-read that found the same cart keeps the version
+                if (expired == null || !sameCart(expired, cart)) changed();
+                loadedAt = System.currentTimeMillis();
+                double sub = nz(cart.getSubtotal());
+                taxRate = sub > 0 ? nz(cart.getTax()) / sub : 0.0;
+            }
+            return cart;
+        }
+
+        void invalidate() {
+            cart = null;
+            changed();
+        }
+
+        void changed() {
+            changes.bump(ChangeVersions.userCart(userId));
+        }
+
+        // Incremental totals: adjust counts and subtotal by the delta, scale tax with the observed rate
+        void setQuantity(CartItemDTO line, int qty) {
+            int old = line.getQuantity() == null ? 0 : line.getQuantity();
+            double price = nz(line.getPrice());
+            int delta = qty - old;
+            if (qty == 0) {
+                cart.getItems().remove(line);
+            } else {
+                line.setQuantity(qty);
+                line.setSubtotal(price * qty);
+            }
+            double subtotal = nz(cart.getSubtotal()) + price * delta;
+            double tax = subtotal * taxRate;
+            cart.setTotalItems((cart.getTotalItems() == null ? 0 : cart.getTotalItems()) + delta);
+            cart.setSubtotal(subtotal);
+            cart.setTax(tax);
+            cart.setTotal(subtotal + nz(cart.getDeliveryFee()) + tax);
+            changed();
+        }
+
+        void flush() {
+            if (pending.isEmpty()) return;
+            List<Map.Entry<Long, Integer>> batch = new ArrayList<>(pending.entrySet());
+            pending.clear();
+            int done = 0;
+            try {
+                for (Map.Entry<Long, Integer> w : batch) {
+                    if (w.getValue() == 0) carts.removeFromCart(userId, w.getKey());
+                    else carts.updateCartItem(userId, w.getKey(), w.getValue());
+                    done++;
+                }
+                failedFlushes = 0;
+            } catch (RuntimeException ex) {
+                flushFailures.increment();
+                List<Map.Entry<Long, Integer>> unwritten = batch.subList(done, batch.size());
+                if (++failedFlushes < maxFlushFailures) {
+                    // Keep the client's view and retry on the next flush; writes are absolute, so repeating is safe
+                    for (Map.Entry<Long, Integer> w : unwritten) pending.putIfAbsent(w.getKey(), w.getValue());
+                    log.warn("Cart write-back failed for userId={} (attempt {}), {} changes requeued",
+                            userId, failedFlushes, unwritten.size(), ex);
+                    return;
+                }
+                flushDropped.increment(unwritten.size());
+                log.error("Cart write-back failed {} times for userId={}, dropping {} changes and reloading from database",
+                        failedFlushes, userId, unwritten.size(), ex);
+                failedFlushes = 0;
+            }
+            // Re-read once per batch so fees and tax are the service's, not our estimate
+            invalidate();
+        }
+    }
+}
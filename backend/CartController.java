@@ -1,50 +1,59 @@
 package com.hungerexpress.cart;
 
+import com.hungerexpress.common.ChangeVersions;
 import com.hungerexpress.common.CurrentUser;
+import com.hungerexpress.coupons.CouponEngine;
 import com.hungerexpress.dto.CartDTO;
 import com.hungerexpress.dto.CartItemDTO;
-import com.hungerexpress.service.CartService;
 import com.hungerexpress.user.User;
-import com.hungerexpress.user.UserRepository;
+import com.hungerexpress.user.UserCache;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.math.BigDecimal;
+
 /**
  * Database-backed Cart Controller
- * Replaces in-memory cart with persistent database storage
+ * Replaces in-memory cart with persistent database storage.
+ * Reads and quantity changes go through {@link CartCache}, which coalesces writes to the database.
  */
+@Slf4j
 @RestController
 @RequestMapping("/api/cart")
 @RequiredArgsConstructor
 public class CartController {
 
-    private final CartService cartService;
-    private final UserRepository userRepository;
+    private final CartCache cartCache;
+    private final UserCache userCache;
+    private final CouponEngine couponEngine;
 
     /**
-     * Get user's cart with all items
+     * Get user's cart with all items.
+     * Answers 304 from the cart's change version when the client's If-None-Match is current.
      */
     @GetMapping
-    public ResponseEntity<CartDTO> getCart() {
+    public ResponseEntity<CartDTO> getCart(@RequestHeader(name = ChangeVersions.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         String email = CurrentUser.email();
-        System.out.println("[CartController] GET /api/cart - email: " + email);
         if (email == null) {
             // Return empty cart for guest users
-            System.out.println("[CartController] Guest user, returning empty cart");
             CartDTO emptyCart = new CartDTO(java.util.List.of(), 0, 0.0, 0.0, 0.0, 0.0);
             return ResponseEntity.ok(emptyCart);
         }
 
-        User user = userRepository.findByEmail(email).orElse(null);
-        if (user == null) {
-            System.out.println("[CartController] User not found for email: " + email);
+        Long userId = userCache.findByEmail(email).map(User::getId).orElse(null);
+        if (userId == null) {
+            log.debug("Cart request for unknown user {}", email);
             return ResponseEntity.status(404).build();
         }
 
-        CartDTO cart = cartService.getCart(user);
-        System.out.println("[CartController] Returning cart with " + cart.getItems().size() + " items");
-        return ResponseEntity.ok(cart);
+        String etag = cartCache.etag(userId);
+        if (ChangeVersions.matches(ifNoneMatch, etag)) {
+            return ChangeVersions.notModified(etag);
+        }
+        CartDTO cart = cartCache.getCart(userId);
+        return ChangeVersions.ok(etag, cart);
     }
 
     /**
@@ -53,20 +62,18 @@ public class CartController {
     @PostMapping("/add")
     public ResponseEntity<CartItemDTO> addToCart(@RequestBody AddToCartRequest request) {
         String email = CurrentUser.email();
-        System.out.println("[CartController] POST /api/cart/add - email: " + email + ", itemId: " + request.menuItemId());
         if (email == null) {
-            System.out.println("[CartController] Guest user trying to add to cart - returning 401 to use localStorage");
+            log.debug("Guest add-to-cart rejected, client keeps the cart in localStorage");
             return ResponseEntity.status(401).build();
         }
 
-        User user = userRepository.findByEmail(email).orElse(null);
-        if (user == null) {
-            System.out.println("[CartController] User not found for email: " + email);
+        Long userId = userCache.findByEmail(email).map(User::getId).orElse(null);
+        if (userId == null) {
+            log.debug("Cart request for unknown user {}", email);
             return ResponseEntity.status(404).build();
         }
 
-        CartItemDTO cartItem = cartService.addToCart(user, request.menuItemId(), request.quantity());
-        System.out.println("[CartController] Added item to cart successfully");
+        CartItemDTO cartItem = cartCache.addToCart(userId, request.menuItemId(), request.quantity());
         return ResponseEntity.ok(cartItem);
     }
 
@@ -78,26 +85,22 @@ public class CartController {
             @PathVariable Long cartItemId,
             @RequestBody UpdateCartItemRequest request) {
         String email = CurrentUser.email();
-        System.out.println("[CartController] PUT /api/cart/items/" + cartItemId + " - email: " + email + ", quantity: " + request.quantity());
         if (email == null) {
-            System.out.println("[CartController] No user email, returning 401");
             return ResponseEntity.status(401).build();
         }
 
-        User user = userRepository.findByEmail(email).orElse(null);
-        if (user == null) {
-            System.out.println("[CartController] User not found for email: " + email);
+        Long userId = userCache.findByEmail(email).map(User::getId).orElse(null);
+        if (userId == null) {
+            log.debug("Cart request for unknown user {}", email);
             return ResponseEntity.status(404).build();
         }
 
-        CartItemDTO cartItem = cartService.updateCartItem(user, cartItemId, request.quantity());
+        CartItemDTO cartItem = cartCache.updateCartItem(userId, cartItemId, request.quantity());
         if (cartItem == null) {
             // Item was removed because quantity was 0
-            System.out.println("[CartController] Item removed (quantity = 0)");
             return ResponseEntity.noContent().build();
         }
         
-        System.out.println("[CartController] Cart item updated successfully");
         return ResponseEntity.ok(cartItem);
     }
 
@@ -107,20 +110,17 @@ public class CartController {
     @DeleteMapping("/items/{cartItemId}")
     public ResponseEntity<Void> removeFromCart(@PathVariable Long cartItemId) {
         String email = CurrentUser.email();
-        System.out.println("[CartController] DELETE /api/cart/items/" + cartItemId + " - email: " + email);
         if (email == null) {
-            System.out.println("[CartController] No user email, returning 401");
             return ResponseEntity.status(401).build();
         }
 
-        User user = userRepository.findByEmail(email).orElse(null);
-        if (user == null) {
-            System.out.println("[CartController] User not found for email: " + email);
+        Long userId = userCache.findByEmail(email).map(User::getId).orElse(null);
+        if (userId == null) {
+            log.debug("Cart request for unknown user {}", email);
             return ResponseEntity.status(404).build();
         }
 
-        cartService.removeFromCart(user, cartItemId);
-        System.out.println("[CartController] Cart item removed successfully");
+        cartCache.removeFromCart(userId, cartItemId);
         return ResponseEntity.noContent().build();
     }
 
@@ -130,20 +130,17 @@ public class CartController {
     @DeleteMapping
     public ResponseEntity<Void> clearCart() {
         String email = CurrentUser.email();
-        System.out.println("[CartController] DELETE /api/cart - email: " + email);
         if (email == null) {
-            System.out.println("[CartController] No user email, returning 401");
             return ResponseEntity.status(401).build();
         }
 
-        User user = userRepository.findByEmail(email).orElse(null);
-        if (user == null) {
-            System.out.println("[CartController] User not found for email: " + email);
+        Long userId = userCache.findByEmail(email).map(User::getId).orElse(null);
+        if (userId == null) {
+            log.debug("Cart request for unknown user {}", email);
             return ResponseEntity.status(404).build();
         }
 
-        cartService.clearCart(user);
-        System.out.println("[CartController] Cart cleared successfully");
+        cartCache.clearCart(userId);
         return ResponseEntity.noContent().build();
     }
 
@@ -157,16 +154,43 @@ public class CartController {
             return ResponseEntity.ok(0L);
         }
 
-        User user = userRepository.findByEmail(email).orElse(null);
-        if (user == null) {
+        Long userId = userCache.findByEmail(email).map(User::getId).orElse(null);
+        if (userId == null) {
             return ResponseEntity.ok(0L);
         }
 
-        long count = cartService.getCartItemCount(user);
+        long count = cartCache.getCartItemCount(userId);
         return ResponseEntity.ok(count);
     }
 
+    /**
+     * Preview a coupon against the current cart (same rules as order creation)
+     */
+    @GetMapping("/preview")
+    public ResponseEntity<CouponPreview> previewCoupon(@RequestParam(required = false) String code) {
+        String email = CurrentUser.email();
+        if (email == null) {
+            return ResponseEntity.status(401).build();
+        }
+
+        Long userId = userCache.findByEmail(email).map(User::getId).orElse(null);
+        if (userId == null) {
+            return ResponseEntity.status(404).build();
+        }
+
+        CartDTO cart = cartCache.getCart(userId);
+        BigDecimal subtotal = BigDecimal.valueOf(cart.getSubtotal() != null ? cart.getSubtotal() : 0.0);
+        CouponEngine.Evaluation coupon = couponEngine.evaluate(subtotal, code);
+        return ResponseEntity.ok(new CouponPreview(
+                coupon.code(),
+                subtotal.doubleValue(),
+                coupon.discount().doubleValue(),
+                subtotal.subtract(coupon.discount()).doubleValue()
+        ));
+    }
+
     // DTOs
     public record AddToCartRequest(Long menuItemId, Integer quantity) {}
     public record UpdateCartItemRequest(Integer quantity) {}
+    public record CouponPreview(String appliedCode, double subtotal, double discount, double total) {}
 }
@@ -6,63 +6,56 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 @RestController
 @RequestMapping("/api/cart/items")
 @RequiredArgsConstructor
 public class CartController_OLD {
 
-    private final Map<String, List<CartItemDto>> carts = new ConcurrentHashMap<>();
+    private final CartStore carts;
+    private final CartSessions sessions;
 
-    private List<CartItemDto> cart(){
-        String email = Optional.ofNullable(CurrentUser.email()).orElse("guest");
-        return carts.computeIfAbsent(email, k -> new ArrayList<>());
+    // Signed-in users are keyed by email; guests get a signed session token on their first write
+    private String key(String sessionToken){
+        return sessions.keyFor(CurrentUser.email(), sessionToken);
     }
 
     @GetMapping
-    public List<CartItemDto> list(){
-        return new ArrayList<>(cart());
+    public List<CartItemDto> list(@RequestHeader(name = CartSessions.HEADER, required = false) String session){
+        return carts.snapshot(key(session));
     }
 
     @PostMapping
-    public List<CartItemDto> add(@RequestBody CartItemDto item){
-        List<CartItemDto> c = cart();
-        for (int i=0;i<c.size();i++){
-            if (Objects.equals(c.get(i).id(), item.id())){
-                CartItemDto cur = c.get(i);
-                c.set(i, new CartItemDto(cur.id(), cur.name(), cur.price(), cur.imageUrl(), cur.qty()+Math.max(1,item.qty())));
-                return c;
-            }
+    public ResponseEntity<List<CartItemDto>> add(@RequestHeader(name = CartSessions.HEADER, required = false) String session,
+                                                 @RequestBody CartItemDto item){
+        String key = key(session);
+        String issued = null;
+        if (key == null) {
+            issued = sessions.issue();
+            key = sessions.keyFor(null, issued);
         }
-        c.add(new CartItemDto(item.id(), item.name(), item.price(), item.imageUrl(), Math.max(1, item.qty())));
-        return c;
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok();
+        if (issued != null) ok.header(CartSessions.HEADER, issued);
+        return ok.body(carts.add(key, item));
     }
 
     @PatchMapping("/{id}")
-    public List<CartItemDto> change(@PathVariable Long id, @RequestParam int delta){
-        List<CartItemDto> c = cart();
-        for (int i=0;i<c.size();i++){
-            if (Objects.equals(c.get(i).id(), id)){
-                CartItemDto cur = c.get(i);
-                int q = Math.max(1, cur.qty()+delta);
-                c.set(i, new CartItemDto(cur.id(), cur.name(), cur.price(), cur.imageUrl(), q));
-                break;
-            }
-        }
-        return c;
+    public List<CartItemDto> change(@RequestHeader(name = CartSessions.HEADER, required = false) String session,
+                                    @PathVariable Long id, @RequestParam int delta){
+        String key = key(session);
+        return key == null ? List.of() : carts.changeQty(key, id, delta);
     }
 
     @DeleteMapping("/{id}")
-    public List<CartItemDto> remove(@PathVariable Long id){
-        List<CartItemDto> c = cart();
-        c.removeIf(it -> Objects.equals(it.id(), id));
-        return c;
+    public List<CartItemDto> remove(@RequestHeader(name = CartSessions.HEADER, required = false) String session,
+                                    @PathVariable Long id){
+        String key = key(session);
+        return key == null ? List.of() : carts.remove(key, id);
     }
 
     @DeleteMapping
-    public ResponseEntity<Void> clear(){
-        cart().clear();
+    public ResponseEntity<Void> clear(@RequestHeader(name = CartSessions.HEADER, required = false) String session){
+        carts.clear(key(session));
         return ResponseEntity.noContent().build();
     }
 }
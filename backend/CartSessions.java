@@ -0,0 +1,76 @@
+package com.hungerexpress.cart;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Cart keys: signed-in users are keyed by email, guests by a signed session token the client
+ * keeps and sends back in the X-Cart-Session header. Guests without a valid token have no cart,
+ * so unauthenticated callers no longer share one "guest" entry.
+ */
+@Component
+public class CartSessions {
+
+    public static final String HEADER = "X-Cart-Session";
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Base64.Encoder B64 = Base64.getUrlEncoder().withoutPadding();
+
+    private final SecretKeySpec key;
+
+    public CartSessions(@Value("${app.cart.session-secret:}") String secret) {
+        byte[] raw;
+        if (secret == null || secret.isBlank()) {
+            // No configured secret: sessions are only valid for the lifetime of this process, like the carts themselves
+            raw = new byte[32];
+            RANDOM.nextBytes(raw);
+        } else {
+            raw = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(raw, "HmacSHA256");
+    }
+
+    /** Store key for the caller, or null for a guest without a valid session token. */
+    public String keyFor(String email, String sessionToken) {
+        if (email != null) return "user:" + email;
+        String id = verify(sessionToken);
+        return id == null ? null : "guest:" + id;
+    }
+
+    /** New guest session token: random id plus its HMAC. */
+    public String issue() {
+        byte[] id = new byte[16];
+        RANDOM.nextBytes(id);
+        String sid = B64.encodeToString(id);
+        return sid + "." + sign(sid);
+    }
+
+    /** The session id if the token's signature checks out, else null. */
+    public String verify(String token) {
+        if (token == null) return null;
+        int dot = token.indexOf('.');
+        if (dot <= 0) return null;
+        String sid = token.substring(0, dot);
+        byte[] expected = sign(sid).getBytes(StandardCharsets.US_ASCII);
+        byte[] actual = token.substring(dot + 1).getBytes(StandardCharsets.US_ASCII);
+        return MessageDigest.isEqual(expected, actual) ? sid : null;
+    }
+
+    private String sign(String sid) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return B64.encodeToString(mac.doFinal(sid.getBytes(StandardCharsets.US_ASCII)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
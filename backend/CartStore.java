@@ -1,13 +1,179 @@
 package com.hungerexpress.cart;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
 
+/**
+ * In-memory carts keyed by {@link CartSessions} keys (signed-in user or signed guest session).
+ *
+ * Each cart is an immutable list replaced through {@link ConcurrentHashMap#compute}, so every
+ * operation is atomic per cart and readers always see a consistent snapshot. The store is bounded:
+ * carts idle for longer than the TTL are swept, and when the cap is exceeded the least recently
+ * used carts are evicted. Only {@link #add} creates a cart; changing or removing lines of a cart
+ * that is not there leaves it absent.
+ */
 @Service
 public class CartStore {
-    private final Map<String, List<CartItemDto>> carts = new ConcurrentHashMap<>();
-    public List<CartItemDto> get(String email){ return carts.computeIfAbsent(email, k -> new ArrayList<>()); }
-    public void clear(String email){ get(email).clear(); }
+
+    // Rough per-entry heap cost used for the bytes gauge
+    private static final int CART_OVERHEAD = 96;
+    private static final int ITEM_OVERHEAD = 64;
+    // Access times sampled to estimate the eviction cutoff
+    private static final int EVICTION_SAMPLE = 1024;
+
+    private record Cart(List<CartItemDto> items, long lastAccess, long bytes) {}
+
+    private final Map<String, Cart> carts = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    // One evicting writer at a time; the others carry on and may briefly see the store over its cap
+    private final ReentrantLock evicting = new ReentrantLock();
+    private final int maxCarts;
+    private final long idleTtlMs;
+
+    public CartStore(@Value("${app.cart.max-carts:100000}") int maxCarts,
+                     @Value("${app.cart.idle-ttl-ms:7200000}") long idleTtlMs,
+                     MeterRegistry meters) {
+        this.maxCarts = maxCarts;
+        this.idleTtlMs = idleTtlMs;
+        meters.gauge("hungerexpress.cart.live", carts, Map::size);
+        meters.gauge("hungerexpress.cart.bytes", bytes, AtomicLong::get);
+    }
+
+    /** Immutable snapshot of the cart, empty if there is none. */
+    public List<CartItemDto> snapshot(String key){
+        if (key == null) return List.of();
+        Cart c = carts.computeIfPresent(key, (k, cur) -> touch(cur));
+        return c == null ? List.of() : c.items();
+    }
+
+    /** Add an item, merging quantities with an existing line for the same id. */
+    public List<CartItemDto> add(String key, CartItemDto item){
+        int qty = Math.max(1, item.qty());
+        return update(key, true, items -> {
+            List<CartItemDto> next = new ArrayList<>(items.size() + 1);
+            boolean merged = false;
+            for (CartItemDto cur : items) {
+                if (!merged && Objects.equals(cur.id(), item.id())) {
+                    next.add(new CartItemDto(cur.id(), cur.name(), cur.price(), cur.imageUrl(), cur.qty() + qty));
+                    merged = true;
+                } else {
+                    next.add(cur);
+                }
+            }
+            if (!merged) next.add(new CartItemDto(item.id(), item.name(), item.price(), item.imageUrl(), qty));
+            return next;
+        });
+    }
+
+    /** Change the quantity of a line by delta, never going below 1. */
+    public List<CartItemDto> changeQty(String key, Long id, int delta){
+        return update(key, false, items -> items.stream()
+                .map(cur -> Objects.equals(cur.id(), id)
+                        ? new CartItemDto(cur.id(), cur.name(), cur.price(), cur.imageUrl(), Math.max(1, cur.qty() + delta))
+                        : cur)
+                .toList());
+    }
+
+    public List<CartItemDto> remove(String key, Long id){
+        return update(key, false, items -> items.stream().filter(it -> !Objects.equals(it.id(), id)).toList());
+    }
+
+    public void clear(String key){
+        if (key == null) return;
+        Cart removed = carts.remove(key);
+        if (removed != null) bytes.addAndGet(-removed.bytes());
+    }
+
+    public int size(){
+        return carts.size();
+    }
+
+    public long bytes(){
+        return bytes.get();
+    }
+
+    private List<CartItemDto> update(String key, boolean create, UnaryOperator<List<CartItemDto>> fn){
+        if (key == null) throw new IllegalArgumentException("No cart key");
+        Cart c = create
+                ? carts.compute(key, (k, cur) -> apply(k, cur, fn))
+                : carts.computeIfPresent(key, (k, cur) -> apply(k, cur, fn));
+        if (c == null) return List.of();
+        if (carts.size() > maxCarts) evictLeastRecentlyUsed();
+        return c.items();
+    }
+
+    private Cart apply(String key, Cart cur, UnaryOperator<List<CartItemDto>> fn){
+        List<CartItemDto> next = List.copyOf(fn.apply(cur == null ? List.of() : cur.items()));
+        Cart updated = new Cart(next, System.currentTimeMillis(), estimate(key, next));
+        bytes.addAndGet(updated.bytes() - (cur == null ? 0 : cur.bytes()));
+        return updated;
+    }
+
+    private static Cart touch(Cart c){
+        return new Cart(c.items(), System.currentTimeMillis(), c.bytes());
+    }
+
+    private static long estimate(String key, List<CartItemDto> items){
+        long b = CART_OVERHEAD + 2L * key.length();
+        for (CartItemDto it : items) {
+            b += ITEM_OVERHEAD;
+            if (it.name() != null) b += 2L * it.name().length();
+            if (it.imageUrl() != null) b += 2L * it.imageUrl().length();
+        }
+        return b;
+    }
+
+    /** Drop carts that have been idle longer than the TTL. */
+    @Scheduled(fixedDelayString = "${app.cart.sweep-ms:60000}")
+    public void sweep(){
+        long cutoff = System.currentTimeMillis() - idleTtlMs;
+        carts.forEach((k, c) -> {
+            if (c.lastAccess() < cutoff) removeIfSame(k, c);
+        });
+    }
+
+    // Over capacity: estimate the access time below which the oldest ~10% fall from a sample of the
+    // carts, then drop everything at or below it in one pass. No sort of the whole store, and a writer
+    // that finds another already evicting goes on instead of queueing behind it.
+    private void evictLeastRecentlyUsed(){
+        if (!evicting.tryLock()) return;
+        try {
+            int size = carts.size();
+            int excess = size - maxCarts;
+            if (excess <= 0) return;
+            int target = Math.max(excess, maxCarts / 10);
+            long[] sample = new long[Math.min(size, EVICTION_SAMPLE)];
+            int n = 0;
+            // ConcurrentHashMap iterates in hash order, which has nothing to do with access order
+            for (Cart c : carts.values()) {
+                if (n == sample.length) break;
+                sample[n++] = c.lastAccess();
+            }
+            if (n == 0) return;
+            Arrays.sort(sample, 0, n);
+            int rank = (int) Math.min(n - 1, Math.max(0, (long) n * target / size - 1));
+            long cutoff = sample[rank];
+            carts.forEach((k, c) -> {
+                if (c.lastAccess() <= cutoff) removeIfSame(k, c);
+            });
+        } finally {
+            evicting.unlock();
+        }
+    }
+
+    private void removeIfSame(String key, Cart expected){
+        if (carts.remove(key, expected)) bytes.addAndGet(-expected.bytes());
+    }
 }
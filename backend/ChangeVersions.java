@@ -0,0 +1,114 @@
+package com.hungerexpress.common;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Change counters behind the ETags of polled GET endpoints.
+ *
+ * Every mutation bumps the scopes it affects (one order, one user's order list, one user's cart...)
+ * to a fresh value of a single sequence, so a scope's version changes whenever its data does and
+ * a poll can be answered with 304 before anything is loaded. The sequence starts from the clock so
+ * versions are not reused across restarts. The map is bounded: when it is full it is cleared and
+ * the floor raised to the current sequence, and scopes without an entry report the floor. That can
+ * only turn a 304 into a 200, never the other way round.
+ *
+ * Versions are node-local; mutations must bump on the node that performs them.
+ */
+@Component
+public class ChangeVersions {
+
+    public static final String IF_NONE_MATCH = "If-None-Match";
+
+    // Clients must revalidate, and shared caches must not hand one user's data to another
+    public static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
+    private final AtomicLong seq = new AtomicLong(System.currentTimeMillis() * 1000);
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final int maxScopes;
+    private volatile long floor = seq.get();
+
+    public ChangeVersions(@Value("${app.etag.max-scopes:200000}") int maxScopes) {
+        this.maxScopes = maxScopes;
+    }
+
+    public static String order(Long orderId) {
+        return "order:" + orderId;
+    }
+
+    public static String userOrders(Long userId) {
+        return "orders:u" + userId;
+    }
+
+    public static String userDisputes(Long userId) {
+        return "disputes:u" + userId;
+    }
+
+    public static String userCart(Long userId) {
+        return "cart:u" + userId;
+    }
+
+    /** Record a change to each scope. Call after the change is committed. */
+    public void bump(String... scopes) {
+        for (String scope : scopes) {
+            versions.put(scope, seq.incrementAndGet());
+        }
+        if (versions.size() > maxScopes) {
+            floor = seq.get();
+            versions.clear();
+        }
+    }
+
+    public long version(String scope) {
+        Long v = versions.get(scope);
+        return v != null ? v : floor;
+    }
+
+    /** Strong ETag for the scope's current version. Read it before loading the data it describes. */
+    public String etag(String scope) {
+        return etag(scope, version(scope));
+    }
+
+    /**
+     * ETag for one view of the scope, e.g. a page of a list: the variant (view, cursor, limit...) is
+     * part of the tag, so two views of the same data never share one.
+     */
+    public String etag(String scope, String variant) {
+        return etag(scope + "~" + Integer.toString(variant.hashCode(), 36), version(scope));
+    }
+
+    // The scope is part of the tag so a client that switches accounts never matches the previous user's tag
+    public static String etag(String scope, long version) {
+        return "\"" + scope + "-" + Long.toString(version, 36) + "\"";
+    }
+
+    /**
+     * True if an If-None-Match header value lists the tag. "*" is deliberately not honoured: callers
+     * check before loading anything, when it is not yet known that the resource exists, and a 304
+     * for a missing order would hide the 404.
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String c = candidate.trim();
+            if (c.startsWith("W/")) c = c.substring(2);
+            if (c.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    public static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(REVALIDATE).build();
+    }
+
+    public static <T> ResponseEntity<T> ok(String etag, T body) {
+        return ResponseEntity.ok().eTag(etag).cacheControl(REVALIDATE).body(body);
+    }
+}
@@ -0,0 +1,154 @@
+package com.hungerexpress.coupons;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * In-memory index of active coupons and the discount arithmetic shared by order creation and cart preview.
+ *
+ * The index is an immutable map swapped atomically, so evaluation never blocks. It is rebuilt when a
+ * coupon row changes (Hibernate post-commit listener) and on a schedule to pick up changes from other
+ * nodes; expired coupons are dropped on every rebuild and ignored at evaluation time.
+ *
+ * Codes are indexed exactly as stored and looked up upper-cased, as the repository lookup this replaced
+ * did: what customers type is case-insensitive, and coupons stored as "Save20" and "SAVE20" stay two
+ * coupons rather than one silently replacing the other.
+ */
+@Component
+public class CouponEngine implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    /** Outcome of applying a coupon; {@link #NONE} when the code does not apply. */
+    public record Evaluation(String code, BigDecimal discount) {
+        public static final Evaluation NONE = new Evaluation(null, BigDecimal.ZERO);
+
+        public boolean applied() {
+            return code != null;
+        }
+    }
+
+    // Coupon fields flattened once so evaluation does no lookups or conversions
+    private record Rule(String code, BigDecimal percentFactor, BigDecimal amountOff, BigDecimal minAmount, long expiresAt) {}
+
+    private final EntityManagerFactory emf;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private volatile Map<String, Rule> index = Map.of();
+
+    public CouponEngine(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    @PostConstruct
+    void init() {
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+        refresh();
+    }
+
+    public Evaluation evaluate(BigDecimal subtotal, String code) {
+        return evaluate(subtotal, code, System.currentTimeMillis());
+    }
+
+    /** Pure evaluation against the current index at the given time (epoch millis). */
+    public Evaluation evaluate(BigDecimal subtotal, String code, long now) {
+        if (code == null || code.isBlank() || subtotal == null) return Evaluation.NONE;
+        Rule r = index.get(code.trim().toUpperCase(Locale.ROOT));
+        if (r == null || r.expiresAt() < now) return Evaluation.NONE;
+        if (r.minAmount() != null && subtotal.compareTo(r.minAmount()) < 0) return Evaluation.NONE;
+
+        BigDecimal discount = BigDecimal.ZERO;
+        if (r.percentFactor() != null) discount = subtotal.multiply(r.percentFactor());
+        if (r.amountOff() != null) discount = discount.add(r.amountOff());
+        if (discount.compareTo(subtotal) > 0) discount = subtotal;
+        return new Evaluation(r.code(), discount);
+    }
+
+    /** Rebuild the index from the database, dropping coupons that have already expired. */
+    @Scheduled(fixedDelayString = "${app.coupons.refresh-ms:60000}", initialDelayString = "${app.coupons.refresh-ms:60000}")
+    public void refresh() {
+        dirty.set(false);
+        long now = System.currentTimeMillis();
+        EntityManager em = emf.createEntityManager();
+        try {
+            List<CouponEntity> active = em.createQuery("SELECT c FROM CouponEntity c WHERE c.active = true", CouponEntity.class)
+                    .getResultList();
+            Map<String, Rule> next = new HashMap<>();
+            for (CouponEntity c : active) {
+                long expiresAt = c.getExpiresAt() == null ? Long.MAX_VALUE : c.getExpiresAt().toEpochMilli();
+                if (expiresAt < now) continue;
+                next.put(c.getCode(), rule(
+                        c.getCode(),
+                        c.getPercentOff() == null ? null : BigDecimal.valueOf(c.getPercentOff()),
+                        c.getAmountOff(),
+                        c.getMinAmount(),
+                        expiresAt));
+            }
+            index = Map.copyOf(next);
+        } finally {
+            em.close();
+        }
+    }
+
+    /** Add or replace a single rule without a database round trip (benchmarks, warm-up). */
+    void register(String code, BigDecimal percentOff, BigDecimal amountOff, BigDecimal minAmount, long expiresAt) {
+        Map<String, Rule> next = new HashMap<>(index);
+        next.put(code, rule(code, percentOff, amountOff, minAmount, expiresAt));
+        index = Map.copyOf(next);
+    }
+
+    private static Rule rule(String code, BigDecimal percentOff, BigDecimal amountOff, BigDecimal minAmount, long expiresAt) {
+        return new Rule(code, percentOff == null ? null : percentOff.movePointLeft(2), amountOff, minAmount, expiresAt);
+    }
+
+    /** Coupon changes arrive in bursts; coalesce them into one rebuild. */
+    @Scheduled(fixedDelay = 1000)
+    void refreshIfDirty() {
+        if (dirty.get()) refresh();
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof CouponEntity) dirty.set(true);
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof CouponEntity) dirty.set(true);
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof CouponEntity) dirty.set(true);
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return persister.getMappedClass() == CouponEntity.class;
+    }
+}
@@ -0,0 +1,72 @@
+package com.hungerexpress.common;
+
+import com.hungerexpress.auth.JwtService;
+import com.hungerexpress.user.UserCache;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Optional;
+
+/**
+ * Resolves the caller's id and role from the verified access token ({@code uid} and {@code role} claims),
+ * so controllers don't need a users lookup per request. The result is memoised on the request.
+ * Tokens without a {@code uid} claim fall back to {@link UserCache}.
+ */
+@Component
+@RequiredArgsConstructor
+public class CurrentPrincipal {
+
+    private static final String ATTR = CurrentPrincipal.class.getName();
+
+    private final JwtService jwt;
+    private final UserCache userCache;
+
+    public Optional<AuthPrincipal> get() {
+        String email = CurrentUser.email();
+        if (email == null) return Optional.empty();
+
+        HttpServletRequest req = currentRequest();
+        if (req != null && req.getAttribute(ATTR) instanceof AuthPrincipal p && p.email().equals(email)) {
+            return Optional.of(p);
+        }
+
+        AuthPrincipal p = fromToken(req, email);
+        if (p == null) {
+            p = userCache.findByEmail(email)
+                    .map(u -> new AuthPrincipal(u.getId(), u.getEmail(), u.getRole() != null ? u.getRole() : "CUSTOMER"))
+                    .orElse(null);
+        }
+        if (p != null && req != null) req.setAttribute(ATTR, p);
+        return Optional.ofNullable(p);
+    }
+
+    /** Current user id, or null for guests. */
+    public Long id() {
+        return get().map(AuthPrincipal::id).orElse(null);
+    }
+
+    private AuthPrincipal fromToken(HttpServletRequest req, String email) {
+        if (req == null) return null;
+        String header = req.getHeader("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) return null;
+        try {
+            Claims claims = jwt.parseClaims(header.substring(7));
+            if (!email.equals(claims.getSubject()) || !(claims.get("uid") instanceof Number uid)) return null;
+            String role = claims.get("role", String.class);
+            return new AuthPrincipal(uid.longValue(), email, role != null ? role : "CUSTOMER");
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static HttpServletRequest currentRequest() {
+        RequestAttributes attrs = RequestContextHolder.getRequestAttributes();
+        return attrs instanceof ServletRequestAttributes s ? s.getRequest() : null;
+    }
+}
@@ -0,0 +1,97 @@
+package com.hungerexpress.common;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps concurrent API requests at what the connection pool can serve, for virtual-thread mode.
+ *
+ * With platform threads Tomcat's worker pool bounds concurrency; with spring.threads.virtual.enabled
+ * every request gets its own thread and nothing stops thousands of them queueing inside Hikari until
+ * they time out with connection errors. Every controller here touches the database, so requests are
+ * admitted up to the pool size (app.web.max-concurrent-requests, default
+ * spring.datasource.hikari.maximum-pool-size) and the rest wait their turn; one still waiting after
+ * app.web.admission-wait-ms gets 503 with Retry-After. SSE subscriptions only hold a permit while the
+ * stream is set up: the async dispatches that follow are not filtered.
+ *
+ * Paths whose time is mostly spent elsewhere are left out (app.web.admission-exclude): media downloads
+ * stream to the client long after their one lookup, logins wait in the password-hashing queue, which
+ * has its own bound, and metrics scrapes never touch the database. Holding a permit through those
+ * would let a few slow clients turn order traffic away.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class DatabaseConcurrencyLimit extends OncePerRequestFilter {
+
+    private final Semaphore permits;
+    private final int limit;
+    private final long waitMs;
+    private final long retryAfterSeconds;
+    private final Counter rejected;
+    private final List<String> excluded;
+
+    public DatabaseConcurrencyLimit(MeterRegistry meters,
+                                    @Value("${app.web.max-concurrent-requests:${spring.datasource.hikari.maximum-pool-size:10}}") int limit,
+                                    @Value("${app.web.admission-wait-ms:5000}") long waitMs,
+                                    @Value("${app.web.retry-after-seconds:1}") long retryAfterSeconds,
+                                    @Value("${app.web.admission-exclude:/api/media/,/api/auth/,/api/metrics/}") List<String> excluded) {
+        this.limit = Math.max(1, limit);
+        this.permits = new Semaphore(this.limit, true);
+        this.waitMs = waitMs;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.excluded = List.copyOf(excluded);
+        this.rejected = meters.counter("hungerexpress.web.admission.rejected");
+        meters.gauge("hungerexpress.web.admission.in_flight", permits, s -> this.limit - s.availablePermits());
+        meters.gauge("hungerexpress.web.admission.waiting", permits, Semaphore::getQueueLength);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        if (!path.startsWith("/api/")) return true;
+        for (String prefix : excluded) {
+            if (path.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean admitted;
+        try {
+            admitted = permits.tryAcquire(waitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+        if (!admitted) {
+            rejected.increment();
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            permits.release();
+        }
+    }
+}
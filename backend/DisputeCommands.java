@@ -0,0 +1,57 @@
+package com.hungerexpress.dispute;
+
+import com.hungerexpress.notification.NotificationEntity;
+import com.hungerexpress.notification.NotificationQueue;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Dispute writes together with the notifications they trigger.
+ *
+ * The save and the notification_outbox insert share one transaction, so a crash between them can
+ * no longer leave a filed or resolved dispute nobody is told about. In-memory state (stats, ETag
+ * versions) is left to the caller, after the commit.
+ */
+@Service
+@RequiredArgsConstructor
+public class DisputeCommands {
+
+    private static final Long ADMIN_USER_ID = 1L; // Admin user ID (assuming ID 1 is admin)
+
+    private final DisputeRepository disputes;
+    private final NotificationQueue notifications;
+
+    @Transactional
+    public DisputeEntity file(DisputeEntity dispute) {
+        DisputeEntity saved = disputes.save(dispute);
+        notifications.enqueue(
+            "dispute-filed:" + saved.getId(),
+            ADMIN_USER_ID,
+            NotificationEntity.NotificationType.SYSTEM_ALERT,
+            "New Dispute Filed",
+            "A customer has filed a dispute for Order #" + saved.getOrderId(),
+            saved.getId()
+        );
+        return saved;
+    }
+
+    /**
+     * Save a resolution and tell the customer. Keyed by the resolution time, so resolving the same
+     * dispute again (say, rejected then approved on appeal) notifies again.
+     */
+    @Transactional
+    public DisputeEntity resolve(DisputeEntity dispute, boolean approved, String response) {
+        DisputeEntity saved = disputes.save(dispute);
+        String outcome = approved ? "resolved" : "rejected";
+        notifications.enqueue(
+            "dispute-" + outcome + ":" + saved.getId() + ":" + saved.getResolvedAt().toEpochMilli(),
+            saved.getUserId(),
+            NotificationEntity.NotificationType.SYSTEM_ALERT,
+            "Dispute " + (approved ? "Resolved" : "Rejected"),
+            "Your dispute for Order #" + saved.getOrderId() + " has been " + outcome + ". " + response,
+            saved.getId()
+        );
+        return saved;
+    }
+}
@@ -1,18 +1,20 @@
 package com.hungerexpress.dispute;
 
-import com.hungerexpress.common.CurrentUser;
-import com.hungerexpress.notification.NotificationService;
+import com.hungerexpress.common.AuthPrincipal;
+import com.hungerexpress.common.ChangeVersions;
+import com.hungerexpress.common.CurrentPrincipal;
+import com.hungerexpress.common.KeysetCursor;
 import com.hungerexpress.orders.OrderEntity;
 import com.hungerexpress.orders.OrderRepository;
-import com.hungerexpress.user.User;
-import com.hungerexpress.user.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/disputes")
@@ -20,79 +22,75 @@ import java.util.List;
 public class DisputeController {
     
     private final DisputeRepository disputeRepo;
-    private final UserRepository userRepo;
+    private final CurrentPrincipal principal;
     private final OrderRepository orderRepo;
-    private final NotificationService notificationService;
+    private final DisputeCommands commands;
+    private final ChangeVersions changes;
+    private final DisputeStatsService stats;
+    
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int SEARCH_DEFAULT_LIMIT = 50;
+    private static final int SEARCH_MAX_LIMIT = 200;
     
     // Create dispute (Customer)
     @PostMapping
     @PreAuthorize("hasRole('CUSTOMER')")
     public ResponseEntity<DisputeEntity> createDispute(@RequestBody CreateDisputeRequest request) {
-        String email = CurrentUser.email();
-        if (email == null) return ResponseEntity.status(401).build();
-        
-        User user = userRepo.findByEmail(email).orElse(null);
-        if (user == null) return ResponseEntity.notFound().build();
+        AuthPrincipal user = principal.get().orElse(null);
+        if (user == null) return ResponseEntity.status(401).build();
         
         // Verify order belongs to user
         OrderEntity order = orderRepo.findById(request.orderId()).orElse(null);
-        if (order == null || !order.getUserId().equals(user.getId())) {
+        if (order == null || !order.getUserId().equals(user.id())) {
             return ResponseEntity.badRequest().build();
         }
         
         DisputeEntity dispute = DisputeEntity.builder()
             .orderId(request.orderId())
-            .userId(user.getId())
+            .userId(user.id())
             .restaurantId(order.getRestaurantId())
             .type(request.type())
             .subject(request.subject())
             .description(request.description())
             .build();
         
-        DisputeEntity saved = disputeRepo.save(dispute);
-        
-        // Notify admin
-        notificationService.sendNotification(
-            1L, // Admin user ID (assuming ID 1 is admin)
-            com.hungerexpress.notification.NotificationEntity.NotificationType.SYSTEM_ALERT,
-            "New Dispute Filed",
-            "A customer has filed a dispute for Order #" + request.orderId(),
-            saved.getId()
-        );
+        // Saved together with the admin notification; stats and ETags follow the commit
+        DisputeEntity saved = commands.file(dispute);
+        changes.bump(ChangeVersions.userDisputes(user.id()));
+        stats.created(saved);
         
         return ResponseEntity.ok(saved);
     }
     
-    // Get user disputes
+    // Get user disputes (304 when the client's If-None-Match is current)
     @GetMapping("/my")
     @PreAuthorize("hasRole('CUSTOMER')")
-    public ResponseEntity<List<DisputeEntity>> getMyDisputes() {
-        String email = CurrentUser.email();
-        if (email == null) return ResponseEntity.status(401).build();
+    public ResponseEntity<List<DisputeEntity>> getMyDisputes(
+        @RequestHeader(name = ChangeVersions.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+        AuthPrincipal user = principal.get().orElse(null);
+        if (user == null) return ResponseEntity.status(401).build();
         
-        User user = userRepo.findByEmail(email).orElse(null);
-        if (user == null) return ResponseEntity.notFound().build();
+        String etag = changes.etag(ChangeVersions.userDisputes(user.id()));
+        if (ChangeVersions.matches(ifNoneMatch, etag)) return ChangeVersions.notModified(etag);
         
-        List<DisputeEntity> disputes = disputeRepo.findByUserIdOrderByCreatedAtDesc(user.getId());
-        return ResponseEntity.ok(disputes);
+        List<DisputeEntity> disputes = disputeRepo.findByUserIdOrderByCreatedAtDesc(user.id());
+        return ChangeVersions.ok(etag, disputes);
     }
     
     // Get dispute by ID
     @GetMapping("/{id}")
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<DisputeEntity> getDispute(@PathVariable Long id) {
-        String email = CurrentUser.email();
-        if (email == null) return ResponseEntity.status(401).build();
-        
-        User user = userRepo.findByEmail(email).orElse(null);
-        if (user == null) return ResponseEntity.notFound().build();
+        AuthPrincipal user = principal.get().orElse(null);
+        if (user == null) return ResponseEntity.status(401).build();
         
         DisputeEntity dispute = disputeRepo.findById(id).orElse(null);
         if (dispute == null) return ResponseEntity.notFound().build();
         
         // Check access rights
-        boolean isAdmin = "ADMIN".equals(user.getRole());
-        boolean isOwner = dispute.getUserId().equals(user.getId());
+        boolean isAdmin = user.hasRole("ADMIN");
+        boolean isOwner = dispute.getUserId().equals(user.id());
         
         if (!isAdmin && !isOwner) {
             return ResponseEntity.status(403).build();
@@ -101,41 +99,62 @@ public class DisputeController {
         return ResponseEntity.ok(dispute);
     }
     
-    // Admin: Get all disputes
+    // Admin: keyset-paginated dispute search, newest first. Returns summaries without the TEXT
+    // columns; the full dispute comes from GET /{id}. The next page's cursor is in X-Next-Cursor.
     @GetMapping("/admin/all")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<List<DisputeEntity>> getAllDisputes(
-        @RequestParam(required = false) DisputeEntity.DisputeStatus status
+    public ResponseEntity<List<DisputeSummary>> getAllDisputes(
+        @RequestParam(required = false) DisputeEntity.DisputeStatus status,
+        @RequestParam(required = false) DisputeEntity.DisputeType type,
+        @RequestParam(required = false) Long restaurantId,
+        @RequestParam(required = false) Instant from,
+        @RequestParam(required = false) Instant to,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(required = false) Integer limit
     ) {
-        List<DisputeEntity> disputes;
-        
-        if (status != null) {
-            disputes = disputeRepo.findByStatusOrderByCreatedAtDesc(status);
-        } else {
-            disputes = disputeRepo.findAll();
+        KeysetCursor after;
+        try {
+            after = KeysetCursor.decode(cursor);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().build();
         }
         
-        return ResponseEntity.ok(disputes);
+        int size = limit == null ? SEARCH_DEFAULT_LIMIT : Math.max(1, Math.min(limit, SEARCH_MAX_LIMIT));
+        // Fetch one extra row to know whether there is a next page
+        List<DisputeSummary> rows = disputeRepo.search(status, type, restaurantId, from, to,
+            after == null ? null : after.createdAt(), after == null ? null : after.id(),
+            PageRequest.of(0, size + 1));
+        
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok();
+        if (rows.size() > size) {
+            rows = rows.subList(0, size);
+            DisputeSummary last = rows.get(rows.size() - 1);
+            ok.header(NEXT_CURSOR_HEADER, new KeysetCursor(last.createdAt(), last.id()).encode());
+        }
+        return ok.body(rows);
     }
     
-    // Admin: Get dispute statistics
+    // Admin: Get dispute statistics (served from in-memory counters, no query)
     @GetMapping("/admin/stats")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<DisputeStats> getDisputeStats() {
-        Long openCount = disputeRepo.countByStatus(DisputeEntity.DisputeStatus.OPEN);
-        Long inReviewCount = disputeRepo.countByStatus(DisputeEntity.DisputeStatus.IN_REVIEW);
-        Long resolvedCount = disputeRepo.countByStatus(DisputeEntity.DisputeStatus.RESOLVED);
-        Long rejectedCount = disputeRepo.countByStatus(DisputeEntity.DisputeStatus.REJECTED);
+        Map<DisputeEntity.DisputeStatus, Long> byStatus = stats.byStatus();
+        Long openCount = byStatus.get(DisputeEntity.DisputeStatus.OPEN);
+        Long inReviewCount = byStatus.get(DisputeEntity.DisputeStatus.IN_REVIEW);
+        Long resolvedCount = byStatus.get(DisputeEntity.DisputeStatus.RESOLVED);
+        Long rejectedCount = byStatus.get(DisputeEntity.DisputeStatus.REJECTED);
         
-        DisputeStats stats = new DisputeStats(
+        DisputeStats result = new DisputeStats(
             openCount,
             inReviewCount,
             resolvedCount,
             rejectedCount,
-            openCount + inReviewCount + resolvedCount + rejectedCount
+            openCount + inReviewCount + resolvedCount + rejectedCount,
+            stats.byType(),
+            stats.byRestaurant()
         );
         
-        return ResponseEntity.ok(stats);
+        return ResponseEntity.ok(result);
     }
     
     // Admin: Resolve dispute
@@ -145,18 +164,16 @@ public class DisputeController {
         @PathVariable Long id,
         @RequestBody ResolveDisputeRequest request
     ) {
-        String email = CurrentUser.email();
-        if (email == null) return ResponseEntity.status(401).build();
-        
-        User admin = userRepo.findByEmail(email).orElse(null);
-        if (admin == null) return ResponseEntity.notFound().build();
+        AuthPrincipal admin = principal.get().orElse(null);
+        if (admin == null) return ResponseEntity.status(401).build();
         
         DisputeEntity dispute = disputeRepo.findById(id).orElse(null);
         if (dispute == null) return ResponseEntity.notFound().build();
         
+        DisputeEntity.DisputeStatus previous = dispute.getStatus();
         dispute.setStatus(request.approved() ? DisputeEntity.DisputeStatus.RESOLVED : DisputeEntity.DisputeStatus.REJECTED);
         dispute.setAdminResponse(request.response());
-        dispute.setResolvedBy(admin.getId());
+        dispute.setResolvedBy(admin.id());
         dispute.setResolvedAt(Instant.now());
         dispute.setUpdatedAt(Instant.now());
         
@@ -164,17 +181,10 @@ public class DisputeController {
             dispute.setRefundAmount(request.refundAmount());
         }
         
-        DisputeEntity saved = disputeRepo.save(dispute);
-        
-        // Notify customer
-        notificationService.sendNotification(
-            dispute.getUserId(),
-            com.hungerexpress.notification.NotificationEntity.NotificationType.SYSTEM_ALERT,
-            "Dispute " + (request.approved() ? "Resolved" : "Rejected"),
-            "Your dispute for Order #" + dispute.getOrderId() + " has been " + 
-                (request.approved() ? "resolved" : "rejected") + ". " + request.response(),
-            dispute.getId()
-        );
+        // Saved together with the customer notification
+        DisputeEntity saved = commands.resolve(dispute, request.approved(), request.response());
+        changes.bump(ChangeVersions.userDisputes(saved.getUserId()));
+        stats.transitioned(saved, previous);
         
         return ResponseEntity.ok(saved);
     }
@@ -189,10 +199,13 @@ public class DisputeController {
         DisputeEntity dispute = disputeRepo.findById(id).orElse(null);
         if (dispute == null) return ResponseEntity.notFound().build();
         
+        DisputeEntity.DisputeStatus previous = dispute.getStatus();
         dispute.setStatus(request.status());
         dispute.setUpdatedAt(Instant.now());
         
         DisputeEntity saved = disputeRepo.save(dispute);
+        changes.bump(ChangeVersions.userDisputes(saved.getUserId()));
+        stats.transitioned(saved, previous);
         return ResponseEntity.ok(saved);
     }
     
@@ -219,6 +232,8 @@ public class DisputeController {
         Long inReviewCount,
         Long resolvedCount,
         Long rejectedCount,
-        Long totalCount
+        Long totalCount,
+        Map<DisputeEntity.DisputeType, Long> byType,
+        Map<Long, Long> byRestaurant
     ) {}
 }
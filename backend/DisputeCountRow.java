@@ -0,0 +1,9 @@
+package com.hungerexpress.dispute;
+
+/** One cell of the grouped dispute count used to seed and reconcile {@link DisputeStatsService}. */
+public record DisputeCountRow(
+    DisputeEntity.DisputeStatus status,
+    DisputeEntity.DisputeType type,
+    Long restaurantId,
+    Long count
+) {}
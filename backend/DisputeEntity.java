@@ -9,7 +9,10 @@ import java.time.Instant;
 @Table(name = "dispute", indexes = {
     @Index(name = "idx_dispute_order", columnList = "order_id"),
     @Index(name = "idx_dispute_user", columnList = "user_id"),
-    @Index(name = "idx_dispute_status", columnList = "status")
+    @Index(name = "idx_dispute_status", columnList = "status"),
+    // Keyset admin search: by status, or across all statuses, newest first
+    @Index(name = "idx_dispute_status_created", columnList = "status, created_at, id"),
+    @Index(name = "idx_dispute_created", columnList = "created_at, id")
 })
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
 public class DisputeEntity {
@@ -1,9 +1,11 @@
 package com.hungerexpress.dispute;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
 import java.util.List;
 
 public interface DisputeRepository extends JpaRepository<DisputeEntity, Long> {
@@ -21,4 +23,27 @@ public interface DisputeRepository extends JpaRepository<DisputeEntity, Long> {
     
     @Query("SELECT COUNT(d) FROM DisputeEntity d WHERE d.status = :status")
     Long countByStatus(@Param("status") DisputeEntity.DisputeStatus status);
+
+    // Admin search: newest first, keyset on (createdAt, id); every filter and the cursor are optional (null = any)
+    @Query("SELECT new com.hungerexpress.dispute.DisputeSummary(d.id, d.orderId, d.userId, d.restaurantId, d.type, d.status, " +
+           "d.subject, d.refundAmount, d.createdAt, d.updatedAt, d.resolvedAt) FROM DisputeEntity d " +
+           "WHERE (:status IS NULL OR d.status = :status) " +
+           "AND (:type IS NULL OR d.type = :type) " +
+           "AND (:restaurantId IS NULL OR d.restaurantId = :restaurantId) " +
+           "AND (:from IS NULL OR d.createdAt >= :from) " +
+           "AND (:to IS NULL OR d.createdAt < :to) " +
+           "AND (:afterCreatedAt IS NULL OR d.createdAt < :afterCreatedAt OR (d.createdAt = :afterCreatedAt AND d.id < :afterId)) " +
+           "ORDER BY d.createdAt DESC, d.id DESC")
+    List<DisputeSummary> search(@Param("status") DisputeEntity.DisputeStatus status,
+                                @Param("type") DisputeEntity.DisputeType type,
+                                @Param("restaurantId") Long restaurantId,
+                                @Param("from") Instant from,
+                                @Param("to") Instant to,
+                                @Param("afterCreatedAt") Instant afterCreatedAt,
+                                @Param("afterId") Long afterId,
+                                Pageable page);
+
+    @Query("SELECT new com.hungerexpress.dispute.DisputeCountRow(d.status, d.type, d.restaurantId, COUNT(d)) " +
+           "FROM DisputeEntity d GROUP BY d.status, d.type, d.restaurantId")
+    List<DisputeCountRow> countGrouped();
 }
@@ -0,0 +1,100 @@
+package com.hungerexpress.dispute;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dispute counts by (status, type, restaurant), kept in memory for the admin dashboard.
+ *
+ * Seeded with one grouped query at startup and updated by {@link DisputeController} on every create
+ * and status change, so reading the stats costs no query. Changes made by other nodes, or racing a
+ * reconcile, can drift the counters; a periodic reconcile re-runs the grouped query and replaces them.
+ */
+@Slf4j
+@Service
+public class DisputeStatsService {
+
+    private record Cell(DisputeEntity.DisputeStatus status, DisputeEntity.DisputeType type, Long restaurantId) {}
+
+    private final DisputeRepository disputes;
+    private volatile Map<Cell, AtomicLong> cells = new ConcurrentHashMap<>();
+
+    public DisputeStatsService(DisputeRepository disputes) {
+        this.disputes = disputes;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        reconcile();
+    }
+
+    /** Replace the counters with a fresh grouped count from the database. */
+    @Scheduled(fixedDelayString = "${app.disputes.stats-reconcile-ms:300000}", initialDelayString = "${app.disputes.stats-reconcile-ms:300000}")
+    public void reconcile() {
+        List<DisputeCountRow> rows = disputes.countGrouped();
+        Map<Cell, AtomicLong> next = new ConcurrentHashMap<>();
+        long total = 0;
+        for (DisputeCountRow r : rows) {
+            next.put(new Cell(r.status(), r.type(), r.restaurantId()), new AtomicLong(r.count()));
+            total += r.count();
+        }
+        long before = total(cells);
+        cells = next;
+        if (before != total) log.info("Dispute stats reconciled: in-memory total {} corrected to {}", before, total);
+    }
+
+    public void created(DisputeEntity d) {
+        add(d.getStatus(), d, 1);
+    }
+
+    /** Move a dispute from its previous status to its current one. */
+    public void transitioned(DisputeEntity d, DisputeEntity.DisputeStatus previous) {
+        if (previous == d.getStatus()) return;
+        add(previous, d, -1);
+        add(d.getStatus(), d, 1);
+    }
+
+    private void add(DisputeEntity.DisputeStatus status, DisputeEntity d, long delta) {
+        cells.computeIfAbsent(new Cell(status, d.getType(), d.getRestaurantId()), c -> new AtomicLong()).addAndGet(delta);
+    }
+
+    public Map<DisputeEntity.DisputeStatus, Long> byStatus() {
+        Map<DisputeEntity.DisputeStatus, Long> res = new EnumMap<>(DisputeEntity.DisputeStatus.class);
+        for (DisputeEntity.DisputeStatus s : DisputeEntity.DisputeStatus.values()) res.put(s, 0L);
+        cells.forEach((c, n) -> res.merge(c.status(), n.get(), Long::sum));
+        return res;
+    }
+
+    public Map<DisputeEntity.DisputeType, Long> byType() {
+        Map<DisputeEntity.DisputeType, Long> res = new EnumMap<>(DisputeEntity.DisputeType.class);
+        cells.forEach((c, n) -> {
+            if (c.type() != null && n.get() != 0) res.merge(c.type(), n.get(), Long::sum);
+        });
+        return res;
+    }
+
+    /** Totals per restaurant; disputes without a restaurant are left out. */
+    public Map<Long, Long> byRestaurant() {
+        Map<Long, Long> res = new HashMap<>();
+        cells.forEach((c, n) -> {
+            if (c.restaurantId() != null && n.get() != 0) res.merge(c.restaurantId(), n.get(), Long::sum);
+        });
+        return res;
+    }
+
+    private static long total(Map<Cell, AtomicLong> m) {
+        long t = 0;
+        for (AtomicLong n : m.values()) t += n.get();
+        return t;
+    }
+}
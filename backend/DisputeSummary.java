@@ -0,0 +1,22 @@
+package com.hungerexpress.dispute;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * List projection of a dispute for the admin console.
+ * Leaves out the TEXT columns (description, adminResponse); fetch the dispute by id for those.
+ */
+public record DisputeSummary(
+    Long id,
+    Long orderId,
+    Long userId,
+    Long restaurantId,
+    DisputeEntity.DisputeType type,
+    DisputeEntity.DisputeStatus status,
+    String subject,
+    BigDecimal refundAmount,
+    Instant createdAt,
+    Instant updatedAt,
+    Instant resolvedAt
+) {}
@@ -0,0 +1,18 @@
+package com.hungerexpress.auth;
+
+/**
+ * Thrown when password hashing is saturated and a request could not get a place in time.
+ */
+public class HashingBusyException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public HashingBusyException(long retryAfterSeconds) {
+        super("Password hashing is busy, retry in " + retryAfterSeconds + "s");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
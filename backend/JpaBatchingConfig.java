@@ -0,0 +1,26 @@
+package com.hungerexpress.common;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * JDBC batching for the order write path. Only effective for entities that do not use
+ * IDENTITY ids (OrderEntity, OrderItemEntity, OrderEventEntity): one IDENTITY insert in the
+ * flush forces its statement out on its own.
+ */
+@Configuration
+public class JpaBatchingConfig {
+
+    @Bean
+    public HibernatePropertiesCustomizer jdbcBatching(@Value("${app.jpa.batch-size:50}") int batchSize) {
+        return props -> {
+            props.put(AvailableSettings.STATEMENT_BATCH_SIZE, batchSize);
+            props.put(AvailableSettings.ORDER_INSERTS, true);
+            props.put(AvailableSettings.ORDER_UPDATES, true);
+            props.put(AvailableSettings.BATCH_VERSIONED_DATA, true);
+        };
+    }
+}
@@ -1,16 +1,25 @@
 package com.hungerexpress.auth;
 
+import com.hungerexpress.common.TtlCache;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
 import java.util.Map;
+import java.util.Optional;
 import java.util.function.Function;
 
 @Service
@@ -21,37 +30,95 @@ public class JwtService {
     @Value("${app.jwt.ttl-ms:3600000}")
     private long ttlMs;
 
+    @Value("${app.jwt.claims-cache.max-size:50000}")
+    private int claimsCacheSize;
+
+    // Built once: decoding the secret and constructing the parser are not free
+    private Key signKey;
+    private JwtParser parser;
+
+    // Verified claims keyed by SHA-256 of the token; entries live until the token expires
+    private TtlCache<String, Claims> verified;
+
+    public JwtService(){
+    }
+
+    // Standalone construction outside Spring (benchmarks)
+    JwtService(String secret, long ttlMs, int claimsCacheSize){
+        this.secret = secret;
+        this.ttlMs = ttlMs;
+        this.claimsCacheSize = claimsCacheSize;
+        init();
+    }
+
+    @PostConstruct
+    void init(){
+        this.signKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret));
+        this.parser = Jwts.parserBuilder().setSigningKey(signKey).build();
+        this.verified = new TtlCache<>(claimsCacheSize, ttlMs);
+    }
+
     public String generate(Map<String, Object> extraClaims, String subject){
+        long now = System.currentTimeMillis();
         return Jwts.builder()
                 .setClaims(extraClaims)
                 .setSubject(subject)
-                .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + ttlMs))
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + ttlMs))
                 .setHeaderParam("kid", "primary")
-                .signWith(getSignKey(), SignatureAlgorithm.HS256)
+                .signWith(signKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
+    /**
+     * Verify the token and return its claims; throws JwtException if it is invalid or expired.
+     * Repeat calls for the same token are served from the cache without re-checking the signature.
+     * The returned claims are shared, treat them as read-only.
+     */
+    public Claims parseClaims(String token){
+        if (token == null || token.isBlank()) throw new IllegalArgumentException("Empty token");
+        String key = digest(token);
+        Claims cached = verified.get(key);
+        if (cached != null) return cached;
+        Claims claims = verify(token);
+        Date exp = claims.getExpiration();
+        if (exp != null) verified.put(key, claims, exp.getTime());
+        return claims;
+    }
+
+    // Signature check and claims parse on the prebuilt parser, bypassing the cache
+    Claims verify(String token){
+        return parser.parseClaimsJws(token).getBody();
+    }
+
+    /** Single-parse validation: the claims if the token is valid, empty otherwise. */
+    public Optional<Claims> validate(String token){
+        try {
+            return Optional.of(parseClaims(token));
+        } catch (JwtException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
     public String extractUsername(String token){
         return extractClaim(token, Claims::getSubject);
     }
 
     public boolean isValid(String token, String username){
-        final String user = extractUsername(token);
-        return (user != null && user.equals(username) && !isExpired(token));
-    }
-
-    private boolean isExpired(String token){
-        return extractClaim(token, Claims::getExpiration).before(new Date());
+        // Expiry is enforced by the parser and by the cache entry lifetime
+        return validate(token).map(c -> c.getSubject() != null && c.getSubject().equals(username)).orElse(false);
     }
 
     private <T> T extractClaim(String token, Function<Claims, T> resolver){
-        final Claims claims = Jwts.parserBuilder().setSigningKey(getSignKey()).build().parseClaimsJws(token).getBody();
-        return resolver.apply(claims);
+        return resolver.apply(parseClaims(token));
     }
 
-    private Key getSignKey(){
-        byte[] keyBytes = Decoders.BASE64.decode(secret);
-        return Keys.hmacShaKeyFor(keyBytes);
+    private static String digest(String token){
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
@@ -0,0 +1,29 @@
+package com.hungerexpress.common;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Opaque keyset cursor over (createdAt, id), newest first, shared by the paged order and dispute lists.
+ * Encoded as URL-safe base64 so clients can pass it back verbatim.
+ */
+public record KeysetCursor(Instant createdAt, Long id) {
+
+    public String encode(){
+        String raw = createdAt.toString() + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** The cursor in the token, or null for a missing or blank one (the first page). */
+    public static KeysetCursor decode(String token){
+        if (token == null || token.isBlank()) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int sep = raw.lastIndexOf('|');
+            return new KeysetCursor(Instant.parse(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.hungerexpress.notification;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/** Local stand-in that only logs, for development and tests without a mail server. */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.notifications.sender", havingValue = "log")
+public class LoggingNotificationSender implements NotificationSender {
+
+    @Override
+    public void send(NotificationOutboxEntity n) {
+        log.info("Notification userId={} type={} title={} relatedId={}", n.getUserId(), n.getType(), n.getTitle(), n.getRelatedId());
+    }
+}
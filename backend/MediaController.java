@@ -1,98 +1,111 @@
 package com.hungerexpress.media;
 
+import com.hungerexpress.common.ChangeVersions;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Upload and serve media files.
+ *
+ * Storage (content-addressed, deduplicated) is handled by {@link MediaStore}.
+ * Files are streamed from disk as a {@link Resource}, so Spring answers Range requests with 206 and
+ * nothing is buffered on the heap. Every response carries a strong ETag (the content hash); UUID
+ * names are immutable and cached for a year, anything else must be revalidated.
+ * {@code ?size=thumb|card|full} selects a resized variant from {@link MediaDerivatives}, falling back
+ * to the original while the variant is not ready.
+ */
+@Slf4j
 @RestController
 @RequestMapping("/api/media")
+@RequiredArgsConstructor
 public class MediaController {
-    
-    private static final String UPLOAD_DIR = "uploads/";
-    
-    public MediaController() {
-        // Create uploads directory if it doesn't exist
-        try {
-            Path uploadPath = Paths.get(UPLOAD_DIR);
-            if (!Files.exists(uploadPath)) {
-                Files.createDirectories(uploadPath);
-                System.out.println("[MediaController] Created uploads directory: " + uploadPath.toAbsolutePath());
-            }
-        } catch (IOException e) {
-            System.err.println("[MediaController] Failed to create uploads directory: " + e.getMessage());
-        }
-    }
-    
-    @PostMapping("/upload")
+
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable();
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePublic();
+
+    private final MediaStore store;
+    private final MediaDerivatives derivatives;
+    private final MediaHotCache hot;
+
+    @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<UploadResponse> uploadFile(@RequestParam("file") MultipartFile file) {
-        System.out.println("[MediaController] Upload request received. File: " + file.getOriginalFilename());
-        
         if (file.isEmpty()) {
-            System.out.println("[MediaController] File is empty");
+            log.debug("Rejecting empty upload {}", file.getOriginalFilename());
             return ResponseEntity.badRequest().build();
         }
-        
+
         try {
-            // Generate unique filename
-            String originalFilename = file.getOriginalFilename();
-            String extension = "";
-            if (originalFilename != null && originalFilename.contains(".")) {
-                extension = originalFilename.substring(originalFilename.lastIndexOf("."));
-            }
-            String filename = UUID.randomUUID() + extension;
-            
-            // Save file
-            Path uploadPath = Paths.get(UPLOAD_DIR);
-            Path filePath = uploadPath.resolve(filename);
-            Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
-            
-            // Return URL
-            String url = "/api/media/" + filename;
-            System.out.println("[MediaController] File uploaded successfully: " + url);
-            
+            String name = store.store(file);
+            store.find(name).ifPresent(derivatives::submit);
+            String url = "/api/media/" + name;
+            log.info("Media uploaded url={} bytes={}", url, file.getSize());
             return ResponseEntity.ok(new UploadResponse(url));
-            
+        } catch (MediaTooLargeException e) {
+            log.debug("Rejecting upload {}: {}", file.getOriginalFilename(), e.getMessage());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
         } catch (IOException e) {
-            System.err.println("[MediaController] Upload failed: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Media upload failed for {}", file.getOriginalFilename(), e);
             return ResponseEntity.internalServerError().build();
         }
     }
-    
+
     @GetMapping("/{filename}")
-    public ResponseEntity<byte[]> getFile(@PathVariable String filename) {
+    public ResponseEntity<Resource> getFile(@PathVariable String filename,
+                                            @RequestParam(required = false) String size,
+                                            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        MediaDerivatives.Variant variant = null;
+        if (size != null && !size.isBlank() && !"original".equalsIgnoreCase(size)) {
+            variant = MediaDerivatives.Variant.parse(size).orElse(null);
+            if (variant == null) return ResponseEntity.badRequest().build();
+        }
+
+        MediaStore.MediaFile f;
         try {
-            Path filePath = Paths.get(UPLOAD_DIR).resolve(filename);
-            
-            if (!Files.exists(filePath)) {
-                System.out.println("[MediaController] File not found: " + filename);
-                return ResponseEntity.notFound().build();
-            }
-            
-            byte[] data = Files.readAllBytes(filePath);
-            
-            // Determine content type
-            String contentType = Files.probeContentType(filePath);
-            if (contentType == null) {
-                contentType = "application/octet-stream";
-            }
-            
-            return ResponseEntity.ok()
-                    .header("Content-Type", contentType)
-                    .body(data);
-                    
+            f = store.find(filename).orElse(null);
         } catch (IOException e) {
-            System.err.println("[MediaController] Failed to read file: " + e.getMessage());
+            log.error("Failed to stat media {}", filename, e);
             return ResponseEntity.internalServerError().build();
         }
+        if (f == null) {
+            log.debug("Media not found: {}", filename);
+            return ResponseEntity.notFound().build();
+        }
+
+        CacheControl cache = f.immutable() ? IMMUTABLE : REVALIDATE;
+        if (variant != null) {
+            MediaStore.MediaFile resized = derivatives.find(f, variant).orElse(null);
+            if (resized != null) {
+                f = resized;
+            } else {
+                // Variant still being generated: serve the original, but do not let clients keep it for this URL
+                cache = REVALIDATE;
+            }
+        }
+        if (ChangeVersions.matches(ifNoneMatch, f.etag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(f.etag()).cacheControl(cache).build();
+        }
+        // Hot files come from a memory mapping, the rest straight from disk
+        Resource body = hot.get(f);
+        if (body == null) body = new FileSystemResource(f.path());
+        // Spring adds Accept-Ranges and answers Range requests with 206 regions of the resource
+        return ResponseEntity.ok()
+                .eTag(f.etag())
+                .cacheControl(cache)
+                .contentType(f.contentType())
+                .body(body);
     }
-    
+
     record UploadResponse(String url) {}
 }
@@ -0,0 +1,235 @@
+package com.hungerexpress.media;
+
+import com.hungerexpress.common.TtlCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resized JPEG variants of uploaded images, produced off the request path with plain ImageIO.
+ *
+ * Variants are keyed by content hash and written next to the blob (blobs/ab/cd/{sha}.thumb.jpg), so
+ * deduplicated uploads share them. Work runs on a small bounded executor; when the queue is full the
+ * job is dropped and simply retried the next time that variant is requested. Until a variant exists
+ * the original is served.
+ */
+@Slf4j
+@Component
+public class MediaDerivatives {
+
+    /** Supported variants, bounded by their longest edge in pixels. */
+    public enum Variant {
+        THUMB(160), CARD(480), FULL(1280);
+
+        final int maxEdge;
+
+        Variant(int maxEdge) {
+            this.maxEdge = maxEdge;
+        }
+
+        /** Parses a ?size= value; empty when unknown. */
+        public static Optional<Variant> parse(String s) {
+            try {
+                return Optional.of(valueOf(s.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                return Optional.empty();
+            }
+        }
+
+        String suffix() {
+            return "." + name().toLowerCase(Locale.ROOT) + ".jpg";
+        }
+    }
+
+    private final MediaStore store;
+    private final ThreadPoolExecutor executor;
+    private final long maxPixels;
+    private final float quality;
+    // Hashes with a job queued or running, so repeated requests do not pile up duplicates
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    // Content that is not a decodable image (or too large to decode), so requests stop re-queuing it
+    private final TtlCache<String, Boolean> unsupported = new TtlCache<>(10_000, TimeUnit.HOURS.toMillis(1));
+    private final Counter generated;
+    private final Counter dropped;
+
+    public MediaDerivatives(MediaStore store, MeterRegistry meters,
+                            @Value("${app.media.derivatives.threads:2}") int threads,
+                            @Value("${app.media.derivatives.queue:256}") int queue,
+                            @Value("${app.media.derivatives.max-pixels:40000000}") long maxPixels,
+                            @Value("${app.media.derivatives.jpeg-quality:0.82}") float quality) {
+        this.store = store;
+        this.maxPixels = maxPixels;
+        this.quality = quality;
+        AtomicInteger n = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queue), r -> {
+                    Thread t = new Thread(r, "media-derivatives-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.NORM_PRIORITY - 1);
+                    return t;
+                });
+        this.generated = meters.counter("hungerexpress.media.derivatives", "result", "generated");
+        this.dropped = meters.counter("hungerexpress.media.derivatives", "result", "dropped");
+        meters.gauge("hungerexpress.media.derivatives.queued", executor, e -> e.getQueue().size());
+    }
+
+    /** Queue generation of all variants for the file, unless they exist or are already queued. */
+    public void submit(MediaStore.MediaFile original) {
+        if (!original.contentType().getType().equals("image")) return;
+        String sha = original.sha256();
+        if (unsupported.get(sha) != null || allExist(sha) || !inFlight.add(sha)) return;
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(original.path(), sha);
+                } finally {
+                    inFlight.remove(sha);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(sha);
+            dropped.increment();
+            log.debug("Derivative queue full, dropping {}", sha);
+        }
+    }
+
+    /** The variant if it has been generated; otherwise queues it and returns empty. */
+    public Optional<MediaStore.MediaFile> find(MediaStore.MediaFile original, Variant v) {
+        Path p = path(original.sha256(), v);
+        try {
+            long size = Files.size(p);
+            return Optional.of(new MediaStore.MediaFile(original.name(), p, size, original.sha256(),
+                    "\"" + original.sha256() + "-" + v.name().toLowerCase(Locale.ROOT) + "\"",
+                    MediaType.IMAGE_JPEG, original.immutable()));
+        } catch (IOException missing) {
+            submit(original);
+            return Optional.empty();
+        }
+    }
+
+    private Path path(String sha, Variant v) {
+        Path blob = store.blobPath(sha);
+        return blob.resolveSibling(sha + v.suffix());
+    }
+
+    private boolean allExist(String sha) {
+        for (Variant v : Variant.values()) {
+            if (!Files.isRegularFile(path(sha, v))) return false;
+        }
+        return true;
+    }
+
+    private void generate(Path source, String sha) {
+        try {
+            BufferedImage img = read(source);
+            if (img == null) {
+                unsupported.put(sha, Boolean.TRUE);
+                return;
+            }
+            for (Variant v : Variant.values()) {
+                Path dest = path(sha, v);
+                if (Files.isRegularFile(dest)) continue;
+                write(scale(img, v.maxEdge), dest);
+            }
+            generated.increment();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not generate derivatives for {}", sha, e);
+        }
+    }
+
+    // Checks dimensions before decoding so a hostile upload cannot exhaust the heap
+    private BufferedImage read(Path source) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+            if (in == null) return null;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    log.debug("Skipping derivatives for {}: {} pixels", source.getFileName(), pixels);
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Downscale only; flattens transparency onto white since the output is JPEG
+    private static BufferedImage scale(BufferedImage src, int maxEdge) {
+        double f = Math.min(1.0, (double) maxEdge / Math.max(src.getWidth(), src.getHeight()));
+        int w = Math.max(1, (int) Math.round(src.getWidth() * f));
+        int h = Math.max(1, (int) Math.round(src.getHeight() * f));
+        BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, w, h);
+            g.drawImage(src, 0, 0, w, h, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    private void write(BufferedImage img, Path dest) throws IOException {
+        // Legacy (pre-index) files have no blob directory yet
+        Files.createDirectories(dest.getParent());
+        Path part = Files.createTempFile(dest.getParent(), "derivative-", ".part");
+        try {
+            ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(part.toFile())) {
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality);
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(img, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            Files.move(part, dest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(part);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
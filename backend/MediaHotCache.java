@@ -0,0 +1,235 @@
+package com.hungerexpress.media;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory-mapped cache for the few media files that take most of the traffic.
+ *
+ * Files are mapped read-only, so their bytes live in the OS page cache rather than on the Java heap
+ * and cost the collector nothing beyond a small buffer object. Only files {@link MediaStore} reports as
+ * immutable are cached: indexed blobs, derivatives, and legacy uploads under UUID names. Admission is frequency based: every request counts, a file is mapped once
+ * it has been asked for often enough, and when the byte budget is full it only gets in if it is
+ * requested more often than the coldest resident, which is then evicted. Counts are halved
+ * periodically so yesterday's popular images age out.
+ *
+ * The max-bytes budget covers resident mappings only. Java cannot unmap a file on demand: an evicted
+ * mapping is released when its buffer is garbage collected, and responses still streaming from it keep
+ * it alive until they finish. Until then it still occupies address space and page cache, so mapped
+ * memory can run above max-bytes for a while after evictions. The mapped_bytes gauge tracks what is
+ * actually still mapped, next to resident_bytes for what the budget counts.
+ */
+@Slf4j
+@Component
+public class MediaHotCache {
+
+    // Tells us when the JDK has dropped a mapping, which happens when its buffer becomes unreachable
+    private static final Cleaner RELEASES = Cleaner.create();
+
+    private record Mapped(ByteBuffer buffer, long size) {}
+
+    private final Map<Path, Mapped> resident = new ConcurrentHashMap<>();
+    private final Map<Path, AtomicInteger> frequency = new ConcurrentHashMap<>();
+    private final AtomicLong residentBytes = new AtomicLong();
+    // Resident plus evicted mappings not yet collected
+    private final AtomicLong mappedBytes = new AtomicLong();
+    private final long maxBytes;
+    private final long maxFileBytes;
+    private final int admitAfter;
+    private final int maxTracked;
+    private final Counter hits;
+    private final Counter misses;
+
+    public MediaHotCache(MeterRegistry meters,
+                         @Value("${app.media.hot-cache.max-bytes:268435456}") long maxBytes,
+                         @Value("${app.media.hot-cache.max-file-bytes:4194304}") long maxFileBytes,
+                         @Value("${app.media.hot-cache.admit-after:3}") int admitAfter,
+                         @Value("${app.media.hot-cache.max-tracked:100000}") int maxTracked) {
+        this.maxBytes = maxBytes;
+        this.maxFileBytes = maxFileBytes;
+        this.admitAfter = admitAfter;
+        this.maxTracked = maxTracked;
+        this.hits = meters.counter("hungerexpress.media.hot_cache.requests", "result", "hit");
+        this.misses = meters.counter("hungerexpress.media.hot_cache.requests", "result", "miss");
+        meters.gauge("hungerexpress.media.hot_cache.resident_bytes", residentBytes, AtomicLong::get);
+        meters.gauge("hungerexpress.media.hot_cache.mapped_bytes", mappedBytes, AtomicLong::get);
+        meters.gauge("hungerexpress.media.hot_cache.entries", resident, Map::size);
+    }
+
+    /** A resource for the file, served from the mapping when the file is hot, otherwise null. */
+    public AbstractResource get(MediaStore.MediaFile f) {
+        if (!f.immutable() || f.size() > maxFileBytes || f.size() == 0) return null;
+        Path p = f.path();
+        int freq = touch(p);
+        Mapped m = resident.get(p);
+        if (m != null) {
+            hits.increment();
+            return new BufferResource(m.buffer(), f.name());
+        }
+        misses.increment();
+        if (freq < admitAfter) return null;
+        m = admit(p, f.size(), freq);
+        return m == null ? null : new BufferResource(m.buffer(), f.name());
+    }
+
+    private int touch(Path p) {
+        AtomicInteger c = frequency.get(p);
+        if (c == null) {
+            if (frequency.size() >= maxTracked) return 0;
+            c = frequency.computeIfAbsent(p, k -> new AtomicInteger());
+        }
+        return c.incrementAndGet();
+    }
+
+    private synchronized Mapped admit(Path p, long size, int freq) {
+        Mapped existing = resident.get(p);
+        if (existing != null) return existing;
+        // Make room by evicting colder residents; give up if one of them is at least as hot
+        while (residentBytes.get() + size > maxBytes) {
+            Path victim = coldest();
+            if (victim == null || count(victim) >= freq) return null;
+            Mapped evicted = resident.remove(victim);
+            if (evicted != null) residentBytes.addAndGet(-evicted.size());
+        }
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            // Read-only views and their duplicates reference buf, so it is unreachable only once the
+            // mapping is evicted and no response is reading from it
+            AtomicLong mapped = mappedBytes;
+            mapped.addAndGet(size);
+            RELEASES.register(buf, () -> mapped.addAndGet(-size));
+            Mapped m = new Mapped(buf.asReadOnlyBuffer(), size);
+            resident.put(p, m);
+            residentBytes.addAndGet(size);
+            return m;
+        } catch (IOException e) {
+            log.debug("Could not map {}", p, e);
+            return null;
+        }
+    }
+
+    private Path coldest() {
+        Path min = null;
+        int minCount = Integer.MAX_VALUE;
+        for (Path p : resident.keySet()) {
+            int c = count(p);
+            if (c < minCount) {
+                min = p;
+                minCount = c;
+            }
+        }
+        return min;
+    }
+
+    private int count(Path p) {
+        AtomicInteger c = frequency.get(p);
+        return c == null ? 0 : c.get();
+    }
+
+    /** Halve all counts and forget files nobody asks for any more. */
+    @Scheduled(fixedDelayString = "${app.media.hot-cache.decay-ms:300000}")
+    public void decay() {
+        frequency.entrySet().removeIf(e -> {
+            int halved = e.getValue().updateAndGet(c -> c >> 1);
+            return halved == 0 && !resident.containsKey(e.getKey());
+        });
+    }
+
+    public long residentBytes() {
+        return residentBytes.get();
+    }
+
+    public long mappedBytes() {
+        return mappedBytes.get();
+    }
+
+    // Each response reads through its own duplicate, so position and limit are never shared
+    private static final class BufferResource extends AbstractResource {
+        private final ByteBuffer buffer;
+        private final String name;
+
+        BufferResource(ByteBuffer buffer, String name) {
+            this.buffer = buffer;
+            this.name = name;
+        }
+
+        @Override
+        public String getDescription() {
+            return "mapped media [" + name + "]";
+        }
+
+        @Override
+        public String getFilename() {
+            return name;
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public long contentLength() {
+            return buffer.capacity();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new BufferInputStream(buffer.duplicate());
+        }
+    }
+
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        BufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buf.hasRemaining()) return -1;
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        // Range requests skip straight to the region start
+        @Override
+        public long skip(long n) {
+            int k = (int) Math.max(0, Math.min(n, buf.remaining()));
+            buf.position(buf.position() + k);
+            return k;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+}
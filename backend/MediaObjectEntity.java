@@ -0,0 +1,31 @@
+package com.hungerexpress.media;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/** Maps a public media name to the content-addressed blob that holds its bytes. */
+@Entity
+@Table(name = "media_object", indexes = {
+        @Index(name = "idx_media_object_sha", columnList = "sha256")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MediaObjectEntity {
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    @Column(nullable = false, length = 64)
+    private String sha256;
+
+    @Column(nullable = false)
+    private long size;
+
+    @Builder.Default
+    private Instant createdAt = Instant.now();
+}
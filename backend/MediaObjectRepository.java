@@ -0,0 +1,6 @@
+package com.hungerexpress.media;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface MediaObjectRepository extends JpaRepository<MediaObjectEntity, String> {
+}
@@ -0,0 +1,231 @@
+package com.hungerexpress.media;
+
+import com.hungerexpress.common.TtlCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed media storage.
+ *
+ * Uploads are hashed (SHA-256) while they stream to a temp file and stored once per distinct
+ * content under blobs/ab/cd/abcd..., so re-uploads of the same photo cost no disk and no directory
+ * holds more than a few thousand entries. Each upload still gets its own UUID name; the
+ * media_object table maps names to hashes and is fronted by an in-memory cache. Names that are not
+ * in the index are looked up as files directly under the root, which is where uploads lived before,
+ * so existing /api/media/{name} URLs keep working.
+ */
+@Slf4j
+@Service
+public class MediaStore {
+
+    /** A stored file ready to be served. */
+    public record MediaFile(String name, Path path, long size, String sha256, String etag, MediaType contentType, boolean immutable) {}
+
+    // Where a name's bytes live; modified is only meaningful (and checked) for legacy files
+    private record Located(Path path, String sha256, long size, long modified, boolean legacy) {}
+
+    private static final Pattern UUID_NAME = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}(\\.[A-Za-z0-9]{1,10})?");
+    private static final int MAX_CACHED_TYPES = 64;
+
+    private final MediaObjectRepository index;
+    private final Path root;
+    private final Path blobs;
+    private final Path tmp;
+    private final long maxBytes;
+    private final TtlCache<String, Located> located;
+    private final Map<String, MediaType> types = new ConcurrentHashMap<>();
+
+    public MediaStore(MediaObjectRepository index,
+                      @Value("${app.media.root:uploads}") String root,
+                      @Value("${app.media.max-bytes:10485760}") long maxBytes,
+                      @Value("${app.media.index-cache-size:100000}") int indexCacheSize) {
+        this.index = index;
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        this.blobs = this.root.resolve("blobs");
+        this.tmp = this.root.resolve(".tmp");
+        this.maxBytes = maxBytes;
+        this.located = new TtlCache<>(indexCacheSize, Long.MAX_VALUE / 2);
+        try {
+            Files.createDirectories(blobs);
+            Files.createDirectories(tmp);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create media directories under " + this.root, e);
+        }
+        log.info("Media stored under {}", this.root);
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Stream the upload into the blob store under a fresh UUID name and index it. Identical content is
+     * stored once. Throws {@link MediaTooLargeException} as soon as the stream passes the size limit.
+     */
+    public String store(MultipartFile file) throws IOException {
+        if (file.getSize() > maxBytes) throw new MediaTooLargeException(maxBytes);
+        String ext = StringUtils.getFilenameExtension(file.getOriginalFilename());
+        String name = UUID.randomUUID() + (ext != null && !ext.isBlank() ? "." + ext.toLowerCase(Locale.ROOT) : "");
+
+        Path part = Files.createTempFile(tmp, "upload-", ".part");
+        try {
+            MessageDigest md = sha256();
+            long size;
+            try (InputStream in = new DigestInputStream(new LimitedInputStream(file.getInputStream(), maxBytes), md)) {
+                size = Files.copy(in, part, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String sha = HexFormat.of().formatHex(md.digest());
+            Path blob = blobPath(sha);
+            if (Files.exists(blob)) {
+                log.debug("Deduplicated upload {} onto blob {}", name, sha);
+            } else {
+                Files.createDirectories(blob.getParent());
+                try {
+                    // Publish atomically so readers never see a partial blob
+                    Files.move(part, blob, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException raced) {
+                    log.debug("Blob {} stored concurrently", sha);
+                }
+            }
+            index.save(MediaObjectEntity.builder().name(name).sha256(sha).size(size).build());
+            located.put(name, new Located(blob, sha, size, 0L, false));
+            return name;
+        } finally {
+            Files.deleteIfExists(part);
+        }
+    }
+
+    /** The file behind a public name, or empty if the name is invalid or nothing is stored under it. */
+    public Optional<MediaFile> find(String name) throws IOException {
+        if (!isValidName(name)) return Optional.empty();
+        Located l = locate(name);
+        if (l == null) return Optional.empty();
+        // Indexed names point at immutable blobs; legacy files are immutable only under UUID names
+        boolean immutable = !l.legacy() || UUID_NAME.matcher(name).matches();
+        return Optional.of(new MediaFile(name, l.path(), l.size(), l.sha256(), "\"" + l.sha256() + "\"", contentType(name), immutable));
+    }
+
+    private Located locate(String name) throws IOException {
+        Located cached = located.get(name);
+        if (cached != null && !cached.legacy()) return cached;
+
+        if (cached == null) {
+            MediaObjectEntity m = index.findById(name).orElse(null);
+            if (m != null) {
+                Located l = new Located(blobPath(m.getSha256()), m.getSha256(), m.getSize(), 0L, false);
+                located.put(name, l);
+                return l;
+            }
+        }
+        return locateLegacy(name, cached);
+    }
+
+    // Pre-index uploads live directly under the root; hash once and revalidate against size and mtime
+    private Located locateLegacy(String name, Located cached) throws IOException {
+        Path p = root.resolve(name);
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(p, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            if (cached != null) located.invalidate(name);
+            return null;
+        }
+        if (!attrs.isRegularFile()) return null;
+        long modified = attrs.lastModifiedTime().toMillis();
+        if (cached != null && cached.size() == attrs.size() && cached.modified() == modified) return cached;
+
+        MessageDigest md = sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(p), md)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        Located l = new Located(p, HexFormat.of().formatHex(md.digest()), attrs.size(), modified, true);
+        located.put(name, l);
+        return l;
+    }
+
+    Path blobPath(String sha) {
+        return blobs.resolve(sha.substring(0, 2)).resolve(sha.substring(2, 4)).resolve(sha);
+    }
+
+    // Names are single path segments; reject anything that could reach the blob or temp directories
+    private static boolean isValidName(String name) {
+        return name != null && !name.isBlank() && !name.startsWith(".") && !name.equals("blobs")
+                && !name.contains("/") && !name.contains("\\");
+    }
+
+    private MediaType contentType(String name) {
+        String ext = StringUtils.getFilenameExtension(name);
+        String key = ext == null ? "" : ext.toLowerCase(Locale.ROOT);
+        MediaType cached = types.get(key);
+        if (cached != null) return cached;
+        MediaType t = MediaTypeFactory.getMediaType("f." + key).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        if (types.size() < MAX_CACHED_TYPES) types.put(key, t);
+        return t;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Fails the copy as soon as more than limit bytes have been read, whatever the declared size said
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long count;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count(n);
+            return n;
+        }
+
+        private void count(int n) {
+            count += n;
+            if (count > limit) throw new MediaTooLargeException(limit);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.hungerexpress.media;
+
+/** Thrown while streaming an upload once it exceeds the configured size limit. */
+public class MediaTooLargeException extends RuntimeException {
+    public MediaTooLargeException(long limit) {
+        super("Upload exceeds " + limit + " bytes");
+    }
+}
@@ -0,0 +1,39 @@
+package com.hungerexpress.common;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Latency histograms for the hot paths. Per-endpoint timers (http.server.requests) and per-query
+ * timers (spring.data.repository.invocations) come from Spring Boot; this only turns on
+ * percentile histograms for them and for our own timers.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterFilter hotPathHistograms() {
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                String name = id.getName();
+                if (name.startsWith("http.server.requests")
+                        || name.startsWith("spring.data.repository.invocations")
+                        || name.startsWith("hungerexpress.")) {
+                    return DistributionStatisticConfig.builder()
+                            .percentilesHistogram(true)
+                            .minimumExpectedValue((double) Duration.ofMillis(1).toNanos())
+                            .maximumExpectedValue((double) Duration.ofSeconds(10).toNanos())
+                            .build()
+                            .merge(config);
+                }
+                return config;
+            }
+        };
+    }
+}
@@ -0,0 +1,44 @@
+package com.hungerexpress.common;
+
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Prometheus scrape endpoint. Scrapers must send app.metrics.scrape-token as a bearer token; with no token
+ * configured the endpoint is off (404) rather than open. The actuator's own prometheus endpoint stays
+ * unexposed over HTTP (Boot only exposes health by default), so this is the single scrape surface.
+ */
+@RestController
+@RequestMapping("/api/metrics")
+public class MetricsController {
+
+    private static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final PrometheusMeterRegistry registry;
+    private final byte[] expected;
+
+    public MetricsController(PrometheusMeterRegistry registry,
+                             @Value("${app.metrics.scrape-token:}") String scrapeToken) {
+        this.registry = registry;
+        this.expected = scrapeToken.isBlank() ? null : ("Bearer " + scrapeToken).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @GetMapping("/prometheus")
+    public ResponseEntity<String> scrape(@RequestHeader(name = "Authorization", required = false) String authorization) {
+        if (expected == null) return ResponseEntity.notFound().build();
+        // Constant-time comparison, so response timing does not leak how much of the token matched
+        byte[] given = authorization == null ? new byte[0] : authorization.getBytes(StandardCharsets.UTF_8);
+        if (!MessageDigest.isEqual(expected, given)) {
+            return ResponseEntity.status(401).build();
+        }
+        return ResponseEntity.ok().header("Content-Type", PROMETHEUS_TEXT).body(registry.scrape());
+    }
+}
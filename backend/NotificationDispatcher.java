@@ -0,0 +1,197 @@
+package com.hungerexpress.notification;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drains the notification outbox in batches.
+ *
+ * Each poll claims up to a batch of due rows (a conditional update per row, so several nodes can
+ * run this safely), delivers them on a fixed pool of workers and waits for the batch before taking
+ * the next. A claim is a lease: if the node dies mid-send the row becomes due again once the lease
+ * expires. The lease is fenced by the attempt count: a worker whose send outlived its lease finds
+ * its SENT or retry mark matching no row, rolls back its in-app notification and leaves the row to
+ * the worker that re-claimed it. Failures are retried with exponential backoff and jitter until max-attempts, after which
+ * the row is parked as FAILED for inspection.
+ *
+ * Polling runs on its own thread rather than the shared scheduler, because a batch of slow SMTP
+ * sends would otherwise hold up every other scheduled task. Each send commits together with its
+ * SENT mark: when mail fails after the in-app row was written, both roll back, so a retry does
+ * not leave a duplicate in-app notification behind.
+ */
+@Slf4j
+@Component
+public class NotificationDispatcher {
+
+    private static final int MAX_ROUNDS_PER_POLL = 20;
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final NotificationOutboxRepository outbox;
+    private final NotificationSender sender;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService poller;
+    private final TransactionTemplate tx;
+    private final long pollMs;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long leaseMs;
+    private final long baseBackoffMs;
+    private final long maxBackoffMs;
+    private final Duration retention;
+    private final Counter sent;
+    private final Counter retried;
+    private final Counter failed;
+
+    public NotificationDispatcher(NotificationOutboxRepository outbox, NotificationSender sender, MeterRegistry meters,
+                                  TransactionTemplate tx,
+                                  @Value("${app.notifications.poll-ms:1000}") long pollMs,
+                                  @Value("${app.notifications.batch-size:100}") int batchSize,
+                                  @Value("${app.notifications.concurrency:4}") int concurrency,
+                                  @Value("${app.notifications.max-attempts:8}") int maxAttempts,
+                                  @Value("${app.notifications.lease-ms:60000}") long leaseMs,
+                                  @Value("${app.notifications.backoff-ms:2000}") long baseBackoffMs,
+                                  @Value("${app.notifications.max-backoff-ms:3600000}") long maxBackoffMs,
+                                  @Value("${app.notifications.retention-days:7}") int retentionDays) {
+        this.outbox = outbox;
+        this.sender = sender;
+        this.tx = tx;
+        this.pollMs = pollMs;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.leaseMs = leaseMs;
+        this.baseBackoffMs = baseBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.retention = Duration.ofDays(retentionDays);
+        AtomicInteger n = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread t = new Thread(r, "notification-worker-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "notification-poller");
+            t.setDaemon(true);
+            return t;
+        });
+        this.sent = meters.counter("hungerexpress.notifications", "result", "sent");
+        this.retried = meters.counter("hungerexpress.notifications", "result", "retried");
+        this.failed = meters.counter("hungerexpress.notifications", "result", "failed");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        poller.scheduleWithFixedDelay(() -> {
+            try {
+                drain();
+            } catch (RuntimeException e) {
+                log.warn("Notification poll failed", e);
+            }
+        }, pollMs, pollMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void drain() {
+        for (int round = 0; round < MAX_ROUNDS_PER_POLL; round++) {
+            Instant now = Instant.now();
+            List<NotificationDue> due = outbox.findDue(now, PageRequest.of(0, batchSize));
+            if (due.isEmpty()) return;
+
+            Instant leaseUntil = now.plusMillis(leaseMs);
+            List<Future<?>> batch = new ArrayList<>(due.size());
+            for (NotificationDue d : due) {
+                if (outbox.claim(d.id(), d.attempts(), now, leaseUntil) == 1) {
+                    int attempt = d.attempts() + 1;
+                    batch.add(workers.submit(() -> deliver(d.id(), attempt)));
+                }
+            }
+            for (Future<?> f : batch) {
+                try {
+                    f.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    log.warn("Notification worker failed", e.getCause());
+                }
+            }
+            // A short batch means the backlog is drained
+            if (due.size() < batchSize) return;
+        }
+    }
+
+    private void deliver(Long id, int attempt) {
+        NotificationOutboxEntity n = outbox.findById(id).orElse(null);
+        if (n == null) return;
+        try {
+            tx.executeWithoutResult(status -> {
+                sender.send(n);
+                // Lost the lease: roll back the in-app row, the new lease holder sends it
+                if (outbox.markSent(id, attempt, Instant.now()) == 0) throw new LeaseLostException();
+            });
+            sent.increment();
+        } catch (LeaseLostException e) {
+            log.warn("Notification {} ({}) outlived its lease on attempt {}, left to the worker that re-claimed it",
+                    id, n.getDedupKey(), attempt);
+        } catch (Exception e) {
+            String error = String.valueOf(e.getMessage());
+            if (error.length() > MAX_ERROR_LENGTH) error = error.substring(0, MAX_ERROR_LENGTH);
+            if (attempt >= maxAttempts) {
+                if (outbox.markFailed(id, attempt, NotificationOutboxEntity.Status.FAILED, Instant.now(), error) == 0) return;
+                failed.increment();
+                log.warn("Notification {} ({}) failed permanently after {} attempts", id, n.getDedupKey(), attempt, e);
+            } else {
+                Instant retryAt = Instant.now().plusMillis(backoff(attempt));
+                if (outbox.markFailed(id, attempt, NotificationOutboxEntity.Status.PENDING, retryAt, error) == 0) return;
+                retried.increment();
+                log.debug("Notification {} attempt {} failed, retrying at {}", id, attempt, retryAt, e);
+            }
+        }
+    }
+
+    // base * 2^(attempt-1), capped, with up to 20% jitter so failed batches do not retry in lockstep
+    private long backoff(int attempt) {
+        long delay = baseBackoffMs << Math.min(Math.max(attempt - 1, 0), 30);
+        if (delay <= 0 || delay > maxBackoffMs) delay = maxBackoffMs;
+        return delay + ThreadLocalRandom.current().nextLong(delay / 5 + 1);
+    }
+
+    /** Delivered rows only matter for dedup of late retries; drop them after the retention period. */
+    @Scheduled(cron = "${app.notifications.purge-cron:0 30 3 * * *}")
+    public void purge() {
+        int removed = outbox.purgeSent(Instant.now().minus(retention));
+        if (removed > 0) log.info("Purged {} delivered notifications", removed);
+    }
+
+    private static final class LeaseLostException extends RuntimeException {
+        LeaseLostException() {
+            super(null, null, false, false);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        poller.shutdownNow();
+        workers.shutdown();
+    }
+}
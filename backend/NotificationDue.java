@@ -0,0 +1,7 @@
+package com.hungerexpress.notification;
+
+/**
+ * A due outbox row as the poll saw it. The attempt count is the claim's fencing token: the claim only
+ * succeeds from this count, and the worker's SENT / retry marks only apply while it is still attempts + 1.
+ */
+public record NotificationDue(Long id, int attempts) {}
@@ -0,0 +1,53 @@
+package com.hungerexpress.notification;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface NotificationOutboxRepository extends JpaRepository<NotificationOutboxEntity, Long> {
+
+    boolean existsByDedupKey(String dedupKey);
+
+    // Pending rows that are due, plus SENDING rows whose worker lease ran out (crashed node)
+    @Query("SELECT new com.hungerexpress.notification.NotificationDue(n.id, n.attempts) FROM NotificationOutboxEntity n " +
+           "WHERE n.status IN ('PENDING', 'SENDING') AND n.nextAttemptAt <= :now ORDER BY n.nextAttemptAt ASC")
+    List<NotificationDue> findDue(@Param("now") Instant now, Pageable page);
+
+    // Take a lease on a due row, from the attempt count the poll saw; 0 means another worker got it first
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE NotificationOutboxEntity n SET n.status = 'SENDING', n.attempts = n.attempts + 1, n.nextAttemptAt = :leaseUntil " +
+           "WHERE n.id = :id AND n.attempts = :attempts AND n.status IN ('PENDING', 'SENDING') AND n.nextAttemptAt <= :now")
+    int claim(@Param("id") Long id, @Param("attempts") int attempts,
+              @Param("now") Instant now, @Param("leaseUntil") Instant leaseUntil);
+
+    // The marks below only apply while the caller still holds the lease of the given attempt; 0 means
+    // the lease ran out and another worker has re-claimed the row
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE NotificationOutboxEntity n SET n.status = 'SENT', n.sentAt = :now, n.lastError = NULL " +
+           "WHERE n.id = :id AND n.status = 'SENDING' AND n.attempts = :attempt")
+    int markSent(@Param("id") Long id, @Param("attempt") int attempt, @Param("now") Instant now);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE NotificationOutboxEntity n SET n.status = :status, n.nextAttemptAt = :nextAttemptAt, n.lastError = :error " +
+           "WHERE n.id = :id AND n.status = 'SENDING' AND n.attempts = :attempt")
+    int markFailed(@Param("id") Long id,
+                   @Param("attempt") int attempt,
+                   @Param("status") NotificationOutboxEntity.Status status,
+                   @Param("nextAttemptAt") Instant nextAttemptAt,
+                   @Param("error") String error);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM NotificationOutboxEntity n WHERE n.status = 'SENT' AND n.sentAt < :before")
+    int purgeSent(@Param("before") Instant before);
+}
@@ -0,0 +1,45 @@
+package com.hungerexpress.notification;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Durable queue for notifications. Enqueueing is a single insert on the caller's thread; delivery
+ * (in-app notification, mail) happens later in {@link NotificationDispatcher}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class NotificationQueue {
+
+    private final NotificationOutboxRepository outbox;
+
+    /**
+     * Queue a notification. Joins the caller's transaction, so the notification is committed (or
+     * rolled back) together with the change that caused it. The dedup key identifies it: a second
+     * enqueue with the same key is dropped, so it must be distinct for every event worth telling.
+     *
+     * The check is a read, not a lock. Two transactions enqueueing the same key at the same moment
+     * both pass it, and the second insert fails on the unique dedup_key index. That failure is not
+     * caught: it fails the caller's change as a whole. Keys are per event (dispute id, resolution
+     * time), so only a genuine double submit can hit it.
+     */
+    @Transactional
+    public void enqueue(String dedupKey, Long userId, NotificationEntity.NotificationType type,
+                        String title, String message, Long relatedId) {
+        if (outbox.existsByDedupKey(dedupKey)) {
+            log.debug("Notification {} already queued", dedupKey);
+            return;
+        }
+        outbox.save(NotificationOutboxEntity.builder()
+                .dedupKey(dedupKey)
+                .userId(userId)
+                .type(type)
+                .title(title)
+                .message(message)
+                .relatedId(relatedId)
+                .build());
+    }
+}
@@ -0,0 +1,10 @@
+package com.hungerexpress.notification;
+
+/**
+ * Delivers one queued notification. Throwing marks the attempt as failed and schedules a retry.
+ * Select the implementation with app.notifications.sender (service, log).
+ */
+public interface NotificationSender {
+
+    void send(NotificationOutboxEntity n) throws Exception;
+}
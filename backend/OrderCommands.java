@@ -0,0 +1,91 @@
+package com.hungerexpress.orders;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.Set;
+
+/**
+ * Order state changes together with their outbox row.
+ *
+ * Each method runs the core write (the conditional update, or the insert for a new order) and the
+ * order_event insert in one transaction, so a committed change always has its event and a failed one
+ * never does. Side effects are left to {@link OrderEventRelay}, which is woken once the transaction
+ * commits. Methods return false when the conditional update matched nothing.
+ */
+@Service
+@RequiredArgsConstructor
+public class OrderCommands {
+
+    private final OrderRepository orders;
+    private final OrderEventRepository events;
+    private final OrderEventRelay relay;
+
+    @Transactional
+    public OrderEntity create(OrderEntity order, String providerOrderId) {
+        OrderEntity saved = orders.save(order);
+        record(OrderEventEntity.builder()
+                .orderId(saved.getId())
+                .type("created")
+                .toStatus(saved.getStatus())
+                .providerOrderId(providerOrderId)
+                .build());
+        return saved;
+    }
+
+    /** Move the order along the transition table; agentId restricts the change to the assigned agent. */
+    @Transactional
+    public boolean transition(Long id, OrderStatus from, OrderStatus to, Long agentId, String type, Long assignedTo, Set<String> before) {
+        if (orders.transition(id, from, to, agentId, Instant.now()) == 0) return false;
+        record(event(id, type, from, to, agentId != null ? agentId : assignedTo, before));
+        return true;
+    }
+
+    @Transactional
+    public boolean claim(Long id, Long agentId, Set<String> before) {
+        if (orders.claim(id, agentId, Instant.now()) == 0) return false;
+        record(event(id, "accepted", OrderStatus.PLACED, OrderStatus.ACCEPTED, agentId, before));
+        return true;
+    }
+
+    @Transactional
+    public boolean assignIfFree(Long id, Long agentId, Set<String> before) {
+        if (orders.assignIfFree(id, agentId) == 0) return false;
+        record(event(id, "assigned", null, null, agentId, before));
+        return true;
+    }
+
+    @Transactional
+    public boolean release(Long id, Long agentId, Set<String> before) {
+        if (orders.release(id, agentId) == 0) return false;
+        record(event(id, "rejected", null, null, agentId, before));
+        return true;
+    }
+
+    private static OrderEventEntity event(Long id, String type, OrderStatus from, OrderStatus to, Long agentId, Set<String> before) {
+        return OrderEventEntity.builder()
+                .orderId(id)
+                .type(type)
+                .fromStatus(from)
+                .toStatus(to)
+                .agentId(agentId)
+                .previousTopics(before == null || before.isEmpty() ? null : String.join(",", before))
+                .build();
+    }
+
+    private void record(OrderEventEntity e) {
+        // Stamped once the order row is locked: this is what sequences one order's events (see findDue)
+        e.setCreatedAt(Instant.now());
+        events.save(e);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                relay.wakeUp();
+            }
+        });
+    }
+}
@@ -0,0 +1,137 @@
+package com.hungerexpress.orders;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory pool of orders agents can pick up (PLACED and unassigned), oldest first.
+ *
+ * Backs GET /api/orders/agent/available so agent polling does not hit the database. The pool is
+ * seeded at startup, kept current by {@link #sync(OrderEntity)} for every processed order event on
+ * any node (see {@link OrderEventTail}), and reconciled against the database periodically to repair
+ * anything the tail missed.
+ * New orders are pushed to agents through the "available" topic of {@link OrderEventBus}.
+ */
+@Slf4j
+@Component
+public class OrderDispatchPool {
+
+    private record Key(long createdAt, long id) {}
+
+    private record Entry(Key key, OrderSummaryDto order, long addedAt) {}
+
+    private static final Comparator<Key> OLDEST_FIRST =
+            Comparator.comparingLong(Key::createdAt).thenComparingLong(Key::id);
+
+    private final OrderRepository orders;
+    private final Map<Long, Entry> byId = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<Key, OrderSummaryDto> queue = new ConcurrentSkipListMap<>(OLDEST_FIRST);
+    // When each order last left the pool, so a reconcile that read the database earlier does not resurrect it
+    private final Map<Long, Long> removedAt = new ConcurrentHashMap<>();
+
+    public OrderDispatchPool(OrderRepository orders, MeterRegistry meters) {
+        this.orders = orders;
+        meters.gauge("hungerexpress.dispatch.pool.size", byId, Map::size);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        reconcile();
+    }
+
+    /** Snapshot of available orders, oldest first. */
+    public List<OrderSummaryDto> available() {
+        return List.copyOf(queue.values());
+    }
+
+    public boolean contains(Long id) {
+        return byId.containsKey(id);
+    }
+
+    /**
+     * Take an order out of the pool; true if it was there. Only a hint: the pool lags orders created
+     * or changed on other nodes, so a miss does not mean the order is taken and callers must still
+     * decide with the conditional update in {@link OrderRepository#claim}. If that does not go
+     * through, hand the order back with {@link #restore(Long)}.
+     */
+    public boolean tryClaim(Long id) {
+        Entry e = byId.remove(id);
+        if (e == null) return false;
+        queue.remove(e.key());
+        removedAt.put(id, System.currentTimeMillis());
+        return true;
+    }
+
+    /** Undo {@link #tryClaim(Long)} after the database claim failed: the order returns if it is still open. */
+    public void restore(Long id) {
+        removedAt.remove(id);
+        try {
+            orders.findByIdWithItems(id).ifPresent(this::sync);
+        } catch (RuntimeException e) {
+            log.warn("Could not restore order {} to the dispatch pool, leaving it to the next reconcile", id, e);
+        }
+    }
+
+    private void remove(Long id) {
+        removedAt.put(id, System.currentTimeMillis());
+        Entry e = byId.remove(id);
+        if (e != null) queue.remove(e.key());
+    }
+
+    /** Put the order in the pool or take it out, depending on its current state. */
+    public void sync(OrderEntity o) {
+        if (o.getStatus() == OrderStatus.PLACED && o.getAssignedTo() == null) {
+            add(OrdersController.toDto(o));
+        } else {
+            remove(o.getId());
+        }
+    }
+
+    private void add(OrderSummaryDto dto) {
+        Key key = new Key(dto.createdAt(), dto.id());
+        Entry prev = byId.put(dto.id(), new Entry(key, dto, System.currentTimeMillis()));
+        if (prev != null && !prev.key().equals(key)) queue.remove(prev.key());
+        queue.put(key, dto);
+    }
+
+    /**
+     * Merge the database view into the pool: add what is missing and drop entries the database no
+     * longer lists, unless they were added locally after the query started.
+     */
+    @Scheduled(fixedDelayString = "${app.dispatch.reconcile-ms:60000}", initialDelayString = "${app.dispatch.reconcile-ms:60000}")
+    public void reconcile() {
+        long startedAt = System.currentTimeMillis();
+        List<OrderSummaryDto> fromDb = orders.findAvailableOrdersWithItems().stream()
+                .map(OrdersController::toDto)
+                .toList();
+        Set<Long> ids = new HashSet<>();
+        for (OrderSummaryDto dto : fromDb) {
+            ids.add(dto.id());
+            Long removed = removedAt.get(dto.id());
+            if (!byId.containsKey(dto.id()) && (removed == null || removed < startedAt)) add(dto);
+        }
+        removedAt.values().removeIf(t -> t < startedAt);
+        byId.values().removeIf(e -> {
+            boolean stale = !ids.contains(e.order().id()) && e.addedAt() < startedAt;
+            if (stale) queue.remove(e.key());
+            return stale;
+        });
+    }
+
+    public int size() {
+        return byId.size();
+    }
+}
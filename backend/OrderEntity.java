@@ -9,10 +9,26 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+    // Kanban feed (findFeedFirstPage / findFeedAfter): status IN (...) cannot be read in created_at order
+    // from a status-led index, so the feed walks this one newest first and filters status, stopping after one page
+    @Index(name = "idx_orders_created", columnList = "created_at, id"),
+    // Active pages of an agent or customer (findAgentPage* / findUserPage* with the non-terminal statuses):
+    // equality on the owner and status finds the few live orders without touching the history. The agent
+    // one also serves findAvailableOrdersWithItems (assigned_to IS NULL, status = PLACED, oldest first)
+    @Index(name = "idx_orders_agent_status_created", columnList = "assigned_to, status, created_at, id"),
+    @Index(name = "idx_orders_user_status_created", columnList = "user_id, status, created_at, id"),
+    // History pages (findAgentPage* / findUserPage* with the terminal statuses) and the full lists
+    // (findByAssignedToWithItems, findByUserIdWithItemsOrderByCreatedAtDesc), walked newest first
+    @Index(name = "idx_orders_agent_created", columnList = "assigned_to, created_at, id"),
+    @Index(name = "idx_orders_user_created", columnList = "user_id, created_at, id")
+})
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
 public class OrderEntity {
-    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled sequence (a one-row table on MySQL) instead of IDENTITY so Hibernate can batch the inserts
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "user_id", nullable = true)  // Allow guest orders
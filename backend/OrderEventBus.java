@@ -0,0 +1,273 @@
+package com.hungerexpress.orders;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Topic-filtered SSE fan-out for order changes.
+ *
+ * Publishing only enqueues: each subscriber owns a bounded queue that is drained on its own virtual
+ * thread, so a slow client never blocks the publisher or other clients. A subscriber whose queue
+ * overflows, or whose send has been stuck longer than the send timeout, is dropped without waiting
+ * on its connection (the emitter is completed off the publish path) and resumes through
+ * Last-Event-ID from the ring buffer of recent events.
+ *
+ * Event ids start from the startup time in microseconds, like {@link com.hungerexpress.common.ChangeVersions},
+ * so ids from before a restart are always below the new process's and a reconnecting client gets a
+ * snapshot instead of unrelated events replayed as if they continued its stream.
+ */
+@Component
+public class OrderEventBus {
+
+    public static final String EVENT_NAME = "orders:update";
+    public static final String KANBAN = "kanban";
+    public static final String AVAILABLE = "available";
+
+    public record OrderDelta(long seq, String type, OrderSummaryDto order) {}
+
+    private record Event(OrderDelta delta, Set<String> topics) {}
+
+    // Queued first for clients that must reload; never stored in the ring
+    private static final Event SNAPSHOT = new Event(null, Set.of());
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final ExecutorService drainPool;
+    private final int queueCapacity;
+    private final long sendTimeoutMs;
+    private final Timer broadcastTimer;
+    private final Counter delivered;
+    private final Counter dropped;
+
+    // Ring buffer of recent events for Last-Event-ID resume, guarded by "this"
+    private final Event[] ring;
+    private long seq;
+
+    public OrderEventBus(@Value("${app.orders.sse.replay-size:1024}") int replaySize,
+                         @Value("${app.orders.sse.queue-capacity:256}") int queueCapacity,
+                         @Value("${app.orders.sse.send-timeout-ms:10000}") long sendTimeoutMs,
+                         MeterRegistry meters) {
+        this.ring = new Event[replaySize];
+        this.seq = System.currentTimeMillis() * 1000;
+        this.queueCapacity = queueCapacity;
+        this.sendTimeoutMs = sendTimeoutMs;
+        this.broadcastTimer = meters.timer("hungerexpress.sse.broadcast");
+        this.delivered = meters.counter("hungerexpress.sse.events.sent");
+        this.dropped = meters.counter("hungerexpress.sse.subscribers.dropped");
+        meters.gauge("hungerexpress.sse.subscribers", subscribers, List::size);
+        // A send blocked on a stalled client parks only its own virtual thread
+        this.drainPool = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("order-sse-", 0).factory());
+    }
+
+    public static String customer(Long userId){ return "customer:" + userId; }
+
+    public static String agent(Long agentId){ return "agent:" + agentId; }
+
+    /** Topics an order is currently visible on. */
+    public static Set<String> topicsOf(OrderEntity o){
+        Set<String> topics = new HashSet<>();
+        if (o.getUserId() != null) topics.add(customer(o.getUserId()));
+        if (o.getAssignedTo() != null) topics.add(agent(o.getAssignedTo()));
+        if (o.getStatus() == OrderStatus.PLACED) {
+            if (o.getAssignedTo() == null) topics.add(AVAILABLE);
+        } else {
+            topics.add(KANBAN);
+        }
+        return topics;
+    }
+
+    /**
+     * Publish a change to every topic the order is on now plus the ones it was on before,
+     * so e.g. pool subscribers learn that an order was claimed.
+     */
+    public void publish(String type, OrderEntity o, Set<String> previousTopics){
+        Set<String> topics = topicsOf(o);
+        topics.addAll(previousTopics);
+        OrderSummaryDto dto = OrdersController.toDto(o);
+        long start = System.nanoTime();
+        synchronized (this) {
+            // Fan-out only enqueues, so holding the lock keeps per-subscriber order equal to seq order
+            Event ev = new Event(new OrderDelta(++seq, type, dto), Set.copyOf(topics));
+            ring[(int) (ev.delta().seq() % ring.length)] = ev;
+            for (Subscriber s : subscribers) {
+                if (s.wants(ev)) s.offer(ev);
+            }
+        }
+        broadcastTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    public void publish(String type, OrderEntity o){
+        publish(type, o, Set.of());
+    }
+
+    /**
+     * Register a subscriber. When lastEventId is still covered by the ring buffer the missed
+     * events are replayed, otherwise the client gets a snapshot event telling it to reload.
+     */
+    public SseEmitter subscribe(Set<String> topics, Long lastEventId){
+        SseEmitter emitter = new SseEmitter(0L);
+        Subscriber sub = new Subscriber(emitter, Set.copyOf(topics), new ArrayBlockingQueue<>(queueCapacity));
+        emitter.onCompletion(() -> subscribers.remove(sub));
+        emitter.onTimeout(() -> subscribers.remove(sub));
+        emitter.onError(e -> subscribers.remove(sub));
+
+        synchronized (this) {
+            // Queue the replay or the snapshot and register under the lock, so nothing published in
+            // between is missed and nothing newer is sent ahead of them
+            List<Event> missed = replay(sub, lastEventId);
+            if (missed != null && missed.size() <= queueCapacity) {
+                sub.queue.addAll(missed);
+            } else {
+                // Gap too large, from another process, or a fresh client: ask it to reload first
+                sub.queue.add(SNAPSHOT);
+            }
+            subscribers.add(sub);
+        }
+        sub.schedule();
+        return emitter;
+    }
+
+    // Events after lastEventId the subscriber wants, or null when the ring no longer covers them
+    private List<Event> replay(Subscriber sub, Long lastEventId){
+        if (lastEventId == null || lastEventId > seq || seq - lastEventId >= ring.length) return null;
+        List<Event> missed = new ArrayList<>();
+        for (long i = lastEventId + 1; i <= seq; i++) {
+            Event ev = ring[(int) (i % ring.length)];
+            // Before this process's first event
+            if (ev == null || ev.delta().seq() != i) return null;
+            if (sub.wants(ev)) missed.add(ev);
+        }
+        return missed;
+    }
+
+    public int subscriberCount(){
+        return subscribers.size();
+    }
+
+    /**
+     * Drop clients whose current send has not returned within the send timeout. The blocked write
+     * itself ends when the connector's write timeout fires; until then it holds only its own thread.
+     */
+    @Scheduled(fixedDelayString = "${app.orders.sse.stall-check-ms:5000}")
+    public void dropStalled(){
+        long now = System.currentTimeMillis();
+        for (Subscriber s : subscribers) {
+            long since = s.sendingSince;
+            if (since != 0 && now - since > sendTimeoutMs) s.drop();
+        }
+    }
+
+    @PreDestroy
+    void shutdown(){
+        drainPool.shutdownNow();
+        subscribers.forEach(s -> s.emitter.complete());
+        subscribers.clear();
+    }
+
+    private static void send(SseEmitter emitter, Event ev) throws Exception {
+        if (ev == SNAPSHOT) {
+            emitter.send(SseEmitter.event().name("snapshot").data("init"));
+            return;
+        }
+        emitter.send(SseEmitter.event()
+                .id(Long.toString(ev.delta().seq()))
+                .name(EVENT_NAME)
+                .data(ev.delta()));
+    }
+
+    private final class Subscriber {
+        final SseEmitter emitter;
+        final Set<String> topics;
+        final BlockingQueue<Event> queue;
+        final AtomicBoolean draining = new AtomicBoolean();
+        volatile boolean dead;
+        // Start of the send in progress, 0 when idle; read by dropStalled
+        volatile long sendingSince;
+
+        Subscriber(SseEmitter emitter, Set<String> topics, BlockingQueue<Event> queue){
+            this.emitter = emitter;
+            this.topics = topics;
+            this.queue = queue;
+        }
+
+        boolean wants(Event ev){
+            for (String t : ev.topics()) if (topics.contains(t)) return true;
+            return false;
+        }
+
+        void offer(Event ev){
+            if (dead) return;
+            if (!queue.offer(ev)) {
+                // Too slow to keep up: drop it, the client reconnects with Last-Event-ID
+                drop();
+                return;
+            }
+            schedule();
+        }
+
+        /**
+         * Unsubscribe without blocking. Called under the bus lock, so the emitter is completed on the
+         * drain executor: complete() waits for the emitter's write lock, which a stuck send may hold.
+         */
+        void drop(){
+            if (dead) return;
+            dead = true;
+            subscribers.remove(this);
+            queue.clear();
+            dropped.increment();
+            try {
+                drainPool.execute(emitter::complete);
+            } catch (RuntimeException rejected) {
+                // Shutting down: the container closes the connection
+            }
+        }
+
+        void schedule(){
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    drainPool.execute(this::drain);
+                } catch (RuntimeException rejected) {
+                    draining.set(false);
+                }
+            }
+        }
+
+        void drain(){
+            try {
+                Event ev;
+                while (!dead && (ev = queue.poll()) != null) {
+                    sendingSince = System.currentTimeMillis();
+                    send(emitter, ev);
+                    sendingSince = 0;
+                    delivered.increment();
+                }
+            } catch (Exception e) {
+                dead = true;
+                subscribers.remove(this);
+                emitter.completeWithError(e);
+                return;
+            } finally {
+                sendingSince = 0;
+                draining.set(false);
+            }
+            if (!dead && !queue.isEmpty()) schedule();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.hungerexpress.orders;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * Outbox row for an order state change, written in the same transaction as the change itself.
+ * {@link OrderEventRelay} applies the side effects (SSE broadcast, payments, agent bookkeeping)
+ * and stamps processedAt, or failedAt once it gives up.
+ *
+ * Ids come from a pooled sequence so the event batches with the order change that writes it. Each node
+ * hands out ids from its own block, so id order is not write order across nodes; events of one order
+ * are sequenced by createdAt instead, which is stamped after the order row is locked (id breaks ties).
+ */
+@Entity
+@Table(name = "order_event", indexes = {
+        @Index(name = "idx_order_event_pending", columnList = "processed_at, next_attempt_at, id"),
+        @Index(name = "idx_order_event_order", columnList = "order_id, processed_at, created_at, id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OrderEventEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_event_seq")
+    @SequenceGenerator(name = "order_event_seq", sequenceName = "order_event_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "order_id", nullable = false)
+    private Long orderId;
+
+    // created, status, cancelled, delivered, assigned, accepted, rejected (the SSE event type)
+    @Column(nullable = false, length = 32)
+    private String type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "from_status", length = 32)
+    private OrderStatus fromStatus;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "to_status", length = 32)
+    private OrderStatus toStatus;
+
+    // Agent acting on the order (accept / deliver) or holding it at the time of the change
+    @Column(name = "agent_id")
+    private Long agentId;
+
+    // Payment to link to a newly created order
+    @Column(name = "provider_order_id", length = 100)
+    private String providerOrderId;
+
+    // SSE topics that showed the order before the change, comma separated, so they can be told it left
+    @Column(name = "previous_topics", length = 500)
+    private String previousTopics;
+
+    @Builder.Default
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt = Instant.now();
+
+    // Due time; while a relay is working on the row it is the lease expiry
+    @Builder.Default
+    @Column(name = "next_attempt_at", nullable = false)
+    private Instant nextAttemptAt = Instant.now();
+
+    @Builder.Default
+    private int attempts = 0;
+
+    @Column(name = "processed_at")
+    private Instant processedAt;
+
+    // Set when the event ran out of attempts; it is then left alone and no longer holds back the order
+    @Column(name = "failed_at")
+    private Instant failedAt;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+}
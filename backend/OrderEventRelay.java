@@ -0,0 +1,226 @@
+package com.hungerexpress.orders;
+
+import com.hungerexpress.agent.AgentOrderAssignment;
+import com.hungerexpress.agent.AgentOrderRepository;
+import com.hungerexpress.payments.PaymentRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the side effects of committed order changes from the order_event outbox.
+ *
+ * A single relay thread per node drains due events in write order, in batches: it leases each row,
+ * updates payments and agent assignment rows as the event requires, then marks the row processed.
+ * Only the leasing node does this database work. The in-memory effects (SSE broadcast, dispatch pool)
+ * are needed on every node and are applied by {@link OrderEventTail}: the leasing node hands the event
+ * over right away, every other node picks it up by tailing processed events. Work is at-least-once,
+ * so every side effect is idempotent. The thread is woken right after a change commits and otherwise
+ * polls, which also picks up events left behind by a crash. A failing event is retried with backoff
+ * and holds back later events for the same order, on every node, until it succeeds or runs out of
+ * attempts and is dead-lettered (failed_at set, left in the table for inspection).
+ */
+@Slf4j
+@Component
+public class OrderEventRelay {
+
+    private static final int MAX_ERROR_LENGTH = 500;
+    private static final int PURGE_BATCH = 1000;
+    private static final int MAX_PURGE_BATCHES = 200;
+
+    private final OrderEventRepository outbox;
+    private final OrderRepository orders;
+    private final OrderEventTail local;
+    private final PaymentRepository payments;
+    private final AgentOrderRepository agentOrders;
+    private final int batchSize;
+    private final long pollMs;
+    private final long leaseMs;
+    private final long maxBackoffMs;
+    private final int maxAttempts;
+    private final Duration retention;
+    private final Semaphore wake = new Semaphore(0);
+    private volatile Thread worker;
+
+    public OrderEventRelay(OrderEventRepository outbox, OrderRepository orders, OrderEventTail local,
+                           PaymentRepository payments, AgentOrderRepository agentOrders,
+                           @Value("${app.orders.outbox.batch-size:100}") int batchSize,
+                           @Value("${app.orders.outbox.poll-ms:1000}") long pollMs,
+                           @Value("${app.orders.outbox.lease-ms:30000}") long leaseMs,
+                           @Value("${app.orders.outbox.max-backoff-ms:600000}") long maxBackoffMs,
+                           @Value("${app.orders.outbox.max-attempts:12}") int maxAttempts,
+                           @Value("${app.orders.outbox.retention-days:3}") int retentionDays) {
+        this.outbox = outbox;
+        this.orders = orders;
+        this.local = local;
+        this.payments = payments;
+        this.agentOrders = agentOrders;
+        this.batchSize = batchSize;
+        this.pollMs = pollMs;
+        this.leaseMs = leaseMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.maxAttempts = maxAttempts;
+        this.retention = Duration.ofDays(retentionDays);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Thread t = new Thread(this::run, "order-event-relay");
+        t.setDaemon(true);
+        worker = t;
+        t.start();
+    }
+
+    /** Called after a change commits so its side effects run now rather than at the next poll. */
+    public void wakeUp() {
+        if (wake.availablePermits() == 0) wake.release();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                wake.tryAcquire(pollMs, TimeUnit.MILLISECONDS);
+                wake.drainPermits();
+                while (drain()) {
+                    // Full batch that made progress: keep going until the backlog is empty
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Order event relay pass failed", e);
+            }
+        }
+    }
+
+    // True when the batch was full and something was processed, i.e. there may be more to do now
+    private boolean drain() {
+        Instant now = Instant.now();
+        // findDue only returns the oldest pending event of each order; heldBack covers this pass,
+        // where a failure or lost claim must stop the same order's next event in the batch
+        List<OrderEventEntity> due = outbox.findDue(now, PageRequest.of(0, batchSize));
+        Set<Long> heldBack = new HashSet<>();
+        int processed = 0;
+        for (OrderEventEntity e : due) {
+            if (heldBack.contains(e.getOrderId())) continue;
+            if (outbox.claim(e.getId(), now, now.plusMillis(leaseMs)) == 0) {
+                heldBack.add(e.getOrderId());
+                continue;
+            }
+            OrderEntity o;
+            try {
+                o = apply(e);
+                Instant done = Instant.now();
+                outbox.markProcessed(e.getId(), done);
+                e.setProcessedAt(done);
+                processed++;
+            } catch (RuntimeException ex) {
+                heldBack.add(e.getOrderId());
+                failed(e, ex);
+                continue;
+            }
+            local.apply(e, o);
+        }
+        return due.size() == batchSize && processed > 0;
+    }
+
+    private void failed(OrderEventEntity e, RuntimeException ex) {
+        int attempt = e.getAttempts() + 1;
+        if (attempt >= maxAttempts) {
+            String error = String.valueOf(ex.getMessage());
+            if (error.length() > MAX_ERROR_LENGTH) error = error.substring(0, MAX_ERROR_LENGTH);
+            outbox.markFailed(e.getId(), Instant.now(), error);
+            log.error("Order event {} ({} for order {}) failed {} times, dead-lettered; later events for the order proceed",
+                    e.getId(), e.getType(), e.getOrderId(), attempt, ex);
+            return;
+        }
+        long delay = Math.min(maxBackoffMs, 1000L << Math.min(attempt - 1, 20));
+        outbox.retryAt(e.getId(), Instant.now().plusMillis(delay));
+        log.warn("Order event {} ({} for order {}) failed on attempt {}, retrying in {} ms",
+                e.getId(), e.getType(), e.getOrderId(), attempt, delay, ex);
+    }
+
+    // Database side effects; returns the order for the local broadcast, null if it is gone
+    private OrderEntity apply(OrderEventEntity e) {
+        OrderEntity o = orders.findByIdWithItems(e.getOrderId()).orElse(null);
+        if (o == null) return null;
+        Instant at = e.getCreatedAt();
+
+        switch (e.getType()) {
+            case "created" -> linkPayment(o, e.getProviderOrderId());
+            case "cancelled" -> payments.findTopByOrder_IdOrderByCreatedAtDesc(o.getId()).ifPresent(p -> {
+                if (!"REFUND_REQUESTED".equals(p.getStatus())) {
+                    p.setStatus("REFUND_REQUESTED");
+                    payments.save(p);
+                }
+            });
+            case "accepted" -> recordAcceptance(o.getId(), e.getAgentId());
+            default -> {
+            }
+        }
+        if (e.getAgentId() != null && (e.getToStatus() == OrderStatus.OUT_FOR_DELIVERY || e.getToStatus() == OrderStatus.DELIVERED)) {
+            updateAssignment(o.getId(), e.getToStatus(), at);
+        }
+        return o;
+    }
+
+    private void linkPayment(OrderEntity o, String providerOrderId) {
+        if (providerOrderId == null) return;
+        payments.findByProviderOrderId(providerOrderId).ifPresent(p -> {
+            if (p.getOrder() != null && o.getId().equals(p.getOrder().getId())) return;
+            p.setOrder(o);
+            p.setStatus("AUTHORIZED");
+            payments.save(p);
+        });
+    }
+
+    private void recordAcceptance(Long orderId, Long agentId) {
+        AgentOrderAssignment latest = agentOrders.findTopByOrderIdOrderByAssignedAtDesc(orderId);
+        if (latest != null && agentId.equals(latest.getAgentId()) && "ACCEPTED".equals(latest.getStatus())) return;
+        agentOrders.save(AgentOrderAssignment.builder()
+                .agentId(agentId)
+                .orderId(orderId)
+                .status("ACCEPTED")
+                .build());
+    }
+
+    private void updateAssignment(Long orderId, OrderStatus status, Instant at) {
+        AgentOrderAssignment a = agentOrders.findTopByOrderIdOrderByAssignedAtDesc(orderId);
+        if (a == null) return;
+        if (status == OrderStatus.OUT_FOR_DELIVERY) a.setPickedUpAt(at); else a.setDeliveredAt(at);
+        a.setStatus(status.name());
+        agentOrders.save(a);
+    }
+
+    // Small id batches, each its own transaction, so the purge never holds long locks on order_event
+    @Scheduled(cron = "${app.orders.outbox.purge-cron:0 15 3 * * *}")
+    public void purge() {
+        Instant before = Instant.now().minus(retention);
+        int removed = 0;
+        for (int i = 0; i < MAX_PURGE_BATCHES; i++) {
+            List<Long> ids = outbox.findPurgeable(before, PageRequest.of(0, PURGE_BATCH));
+            if (ids.isEmpty()) break;
+            removed += outbox.deleteByIdIn(ids);
+            if (ids.size() < PURGE_BATCH) break;
+        }
+        if (removed > 0) log.info("Purged {} processed order events", removed);
+    }
+
+    @PreDestroy
+    void stop() {
+        Thread t = worker;
+        if (t != null) t.interrupt();
+    }
+}
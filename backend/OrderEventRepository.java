@@ -0,0 +1,62 @@
+package com.hungerexpress.orders;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface OrderEventRepository extends JpaRepository<OrderEventEntity, Long> {
+
+    // Oldest first, and only the head of each order's queue: an event waits while an earlier one for
+    // the same order is still pending (retrying, or leased by another node), so changes to one order
+    // are always applied in the order they happened. Dead-lettered events no longer block. "Earlier"
+    // is by createdAt then id, as pooled ids from different nodes are not in write order.
+    @Query("SELECT e FROM OrderEventEntity e WHERE e.processedAt IS NULL AND e.failedAt IS NULL AND e.nextAttemptAt <= :now " +
+           "AND NOT EXISTS (SELECT 1 FROM OrderEventEntity e2 WHERE e2.orderId = e.orderId " +
+           "AND (e2.createdAt < e.createdAt OR (e2.createdAt = e.createdAt AND e2.id < e.id)) " +
+           "AND e2.processedAt IS NULL AND e2.failedAt IS NULL) " +
+           "ORDER BY e.createdAt ASC, e.id ASC")
+    List<OrderEventEntity> findDue(@Param("now") Instant now, Pageable page);
+
+    // Lease the row to this relay; 0 means another node holds it
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE OrderEventEntity e SET e.nextAttemptAt = :leaseUntil, e.attempts = e.attempts + 1 " +
+           "WHERE e.id = :id AND e.processedAt IS NULL AND e.nextAttemptAt <= :now")
+    int claim(@Param("id") Long id, @Param("now") Instant now, @Param("leaseUntil") Instant leaseUntil);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE OrderEventEntity e SET e.processedAt = :now WHERE e.id = :id")
+    int markProcessed(@Param("id") Long id, @Param("now") Instant now);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE OrderEventEntity e SET e.nextAttemptAt = :retryAt WHERE e.id = :id")
+    int retryAt(@Param("id") Long id, @Param("retryAt") Instant retryAt);
+
+    // Out of attempts: park the row for inspection and let the order's later events through
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE OrderEventEntity e SET e.failedAt = :now, e.lastError = :error WHERE e.id = :id")
+    int markFailed(@Param("id") Long id, @Param("now") Instant now, @Param("error") String error);
+
+    // Processed events in processing order, keyset paged, for every node's in-memory effects (OrderEventTail)
+    @Query("SELECT e FROM OrderEventEntity e WHERE e.processedAt > :at OR (e.processedAt = :at AND e.id > :id) " +
+           "ORDER BY e.processedAt ASC, e.id ASC")
+    List<OrderEventEntity> findProcessedAfter(@Param("at") Instant at, @Param("id") long id, Pageable page);
+
+    @Query("SELECT e.id FROM OrderEventEntity e WHERE e.processedAt < :before")
+    List<Long> findPurgeable(@Param("before") Instant before, Pageable page);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM OrderEventEntity e WHERE e.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,101 @@
+package com.hungerexpress.orders;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Applies the in-memory effects of processed order events (SSE broadcast, dispatch pool) on every node.
+ *
+ * {@link OrderEventRelay} leases each event to one node, which is right for the database side effects
+ * but not for state that lives in each node's memory. So every node tails order_event by processing
+ * time and applies the local effects of each processed event once. The leasing node hands its events
+ * over directly, right after marking them processed; the others see them at the next poll.
+ *
+ * Each poll re-reads a lookback window behind the newest event it has seen, because processed_at is
+ * stamped on the leasing node before its commit and by that node's clock. The lookback must exceed
+ * commit lag plus clock skew between nodes; an event that lands further back than that is missed
+ * here and left to the pool's periodic reconcile and the client's next reload. The order is re-read
+ * when the event is applied, so a late or reordered event still broadcasts the order's current state.
+ */
+@Slf4j
+@Component
+public class OrderEventTail {
+
+    private static final int PAGE = 500;
+
+    private final OrderEventRepository outbox;
+    private final OrderRepository orders;
+    private final OrderEventBus bus;
+    private final OrderDispatchPool dispatch;
+    private final long lookbackMs;
+    // Events already applied on this node, with their processing time for pruning
+    private final Map<Long, Instant> applied = new ConcurrentHashMap<>();
+    private volatile Instant cursor = Instant.now();
+
+    public OrderEventTail(OrderEventRepository outbox, OrderRepository orders, OrderEventBus bus, OrderDispatchPool dispatch,
+                          @Value("${app.orders.outbox.tail-lookback-ms:5000}") long lookbackMs) {
+        this.outbox = outbox;
+        this.orders = orders;
+        this.bus = bus;
+        this.dispatch = dispatch;
+        this.lookbackMs = lookbackMs;
+    }
+
+    @Scheduled(fixedDelayString = "${app.orders.outbox.tail-ms:500}")
+    public void poll() {
+        Instant start = cursor.minusMillis(lookbackMs);
+        Instant afterAt = start;
+        long afterId = Long.MIN_VALUE;
+        Instant newest = cursor;
+        while (true) {
+            List<OrderEventEntity> page = outbox.findProcessedAfter(afterAt, afterId, PageRequest.of(0, PAGE));
+            for (OrderEventEntity e : page) {
+                apply(e, null);
+                if (e.getProcessedAt().isAfter(newest)) newest = e.getProcessedAt();
+            }
+            if (page.size() < PAGE) break;
+            OrderEventEntity last = page.get(page.size() - 1);
+            afterAt = last.getProcessedAt();
+            afterId = last.getId();
+        }
+        // Never past our own clock, so a node stamping in the future cannot make us skip everyone else
+        Instant now = Instant.now();
+        cursor = newest.isAfter(now) ? now : newest;
+        Instant prune = cursor.minusMillis(2 * lookbackMs);
+        applied.values().removeIf(at -> at.isBefore(prune));
+    }
+
+    /**
+     * Broadcast the order and sync the dispatch pool, once per event on this node. The relay passes the
+     * order it already loaded; the tail passes null and the current row is read.
+     */
+    void apply(OrderEventEntity e, OrderEntity loaded) {
+        Instant at = e.getProcessedAt() != null ? e.getProcessedAt() : Instant.now();
+        if (applied.putIfAbsent(e.getId(), at) != null) return;
+        try {
+            OrderEntity o = loaded != null ? loaded : orders.findByIdWithItems(e.getOrderId()).orElse(null);
+            if (o == null) return;
+            dispatch.sync(o);
+            bus.publish(e.getType(), o, topics(e.getPreviousTopics()));
+        } catch (RuntimeException ex) {
+            // Not retried: the pool reconciles and SSE clients reload on their next snapshot
+            log.warn("Could not apply order event {} ({} for order {}) locally", e.getId(), e.getType(), e.getOrderId(), ex);
+        }
+    }
+
+    private static Set<String> topics(String joined) {
+        if (joined == null || joined.isBlank()) return Set.of();
+        return new HashSet<>(Arrays.asList(joined.split(",")));
+    }
+}
@@ -0,0 +1,10 @@
+package com.hungerexpress.orders;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Slim projection of an order row used by paginated feeds.
+ * Skips the address snapshot and the items collection.
+ */
+public record OrderFeedRow(Long id, OrderStatus status, BigDecimal total, Instant createdAt) {}
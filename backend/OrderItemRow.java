@@ -0,0 +1,8 @@
+package com.hungerexpress.orders;
+
+import java.math.BigDecimal;
+
+/**
+ * Projection of an order item keyed by its parent order, so items for a whole page can be loaded in one query.
+ */
+public record OrderItemRow(Long orderId, Long id, String name, BigDecimal price, Integer qty) {}
@@ -1,9 +1,14 @@
 package com.hungerexpress.orders;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,4 +29,112 @@ public interface OrderRepository extends JpaRepository<OrderEntity, Long> {
     
     @Query("SELECT DISTINCT o FROM OrderEntity o LEFT JOIN FETCH o.items ORDER BY o.createdAt DESC")
     List<OrderEntity> findAllWithItems();
+
+    // Keyset feed: newest first, filtered by status in the database, no items or address snapshot
+    @Query("SELECT new com.hungerexpress.orders.OrderFeedRow(o.id, o.status, o.total, o.createdAt) FROM OrderEntity o " +
+           "WHERE o.status IN :statuses ORDER BY o.createdAt DESC, o.id DESC")
+    List<OrderFeedRow> findFeedFirstPage(@Param("statuses") Collection<OrderStatus> statuses, Pageable page);
+
+    @Query("SELECT new com.hungerexpress.orders.OrderFeedRow(o.id, o.status, o.total, o.createdAt) FROM OrderEntity o " +
+           "WHERE o.status IN :statuses AND (o.createdAt < :createdAt OR (o.createdAt = :createdAt AND o.id < :id)) " +
+           "ORDER BY o.createdAt DESC, o.id DESC")
+    List<OrderFeedRow> findFeedAfter(@Param("statuses") Collection<OrderStatus> statuses,
+                                     @Param("createdAt") Instant createdAt,
+                                     @Param("id") Long id,
+                                     Pageable page);
+
+    // Keyset pages of one agent's or one customer's orders, same shape as the feed; the active view
+    // passes the non-terminal statuses, history the terminal ones
+
+    @Query("SELECT new com.hungerexpress.orders.OrderFeedRow(o.id, o.status, o.total, o.createdAt) FROM OrderEntity o " +
+           "WHERE o.assignedTo = :agentId AND o.status IN :statuses ORDER BY o.createdAt DESC, o.id DESC")
+    List<OrderFeedRow> findAgentPageFirst(@Param("agentId") Long agentId,
+                                          @Param("statuses") Collection<OrderStatus> statuses,
+                                          Pageable page);
+
+    @Query("SELECT new com.hungerexpress.orders.OrderFeedRow(o.id, o.status, o.total, o.createdAt) FROM OrderEntity o " +
+           "WHERE o.assignedTo = :agentId AND o.status IN :statuses " +
+           "AND (o.createdAt < :createdAt OR (o.createdAt = :createdAt AND o.id < :id)) " +
+           "ORDER BY o.createdAt DESC, o.id DESC")
+    List<OrderFeedRow> findAgentPageAfter(@Param("agentId") Long agentId,
+                                          @Param("statuses") Collection<OrderStatus> statuses,
+                                          @Param("createdAt") Instant createdAt,
+                                          @Param("id") Long id,
+                                          Pageable page);
+
+    @Query("SELECT new com.hungerexpress.orders.OrderFeedRow(o.id, o.status, o.total, o.createdAt) FROM OrderEntity o " +
+           "WHERE o.userId = :userId AND o.status IN :statuses ORDER BY o.createdAt DESC, o.id DESC")
+    List<OrderFeedRow> findUserPageFirst(@Param("userId") Long userId,
+                                         @Param("statuses") Collection<OrderStatus> statuses,
+                                         Pageable page);
+
+    @Query("SELECT new com.hungerexpress.orders.OrderFeedRow(o.id, o.status, o.total, o.createdAt) FROM OrderEntity o " +
+           "WHERE o.userId = :userId AND o.status IN :statuses " +
+           "AND (o.createdAt < :createdAt OR (o.createdAt = :createdAt AND o.id < :id)) " +
+           "ORDER BY o.createdAt DESC, o.id DESC")
+    List<OrderFeedRow> findUserPageAfter(@Param("userId") Long userId,
+                                         @Param("statuses") Collection<OrderStatus> statuses,
+                                         @Param("createdAt") Instant createdAt,
+                                         @Param("id") Long id,
+                                         Pageable page);
+
+    @Query("SELECT new com.hungerexpress.orders.OrderItemRow(i.order.id, i.id, i.name, i.price, i.qty) FROM OrderItemEntity i " +
+           "WHERE i.order.id IN :orderIds ORDER BY i.id ASC")
+    List<OrderItemRow> findItemRowsByOrderIds(@Param("orderIds") Collection<Long> orderIds);
+
+    // Conditional state changes: each succeeds only from the expected prior state and returns the rows updated (0 or 1)
+
+    // An agent may accept an order nobody holds or one they already took with assign/me
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE OrderEntity o SET o.assignedTo = :agentId, o.status = 'ACCEPTED', o.preparingAt = :now " +
+           "WHERE o.id = :id AND o.status = 'PLACED' AND (o.assignedTo IS NULL OR o.assignedTo = :agentId)")
+    int claim(@Param("id") Long id, @Param("agentId") Long agentId, @Param("now") Instant now);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE OrderEntity o SET o.assignedTo = :agentId " +
+           "WHERE o.id = :id AND (o.assignedTo IS NULL OR o.assignedTo = :agentId) AND o.status NOT IN :terminal")
+    int assignIfFree(@Param("id") Long id, @Param("agentId") Long agentId, @Param("terminal") Collection<OrderStatus> terminal);
+
+    /** Take the order unless another agent holds it or it has already finished. */
+    default int assignIfFree(Long id, Long agentId){
+        return assignIfFree(id, agentId, OrderTransitions.terminalStatuses());
+    }
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE OrderEntity o SET o.assignedTo = NULL " +
+           "WHERE o.id = :id AND o.status = 'PLACED' AND (o.assignedTo IS NULL OR o.assignedTo = :agentId)")
+    int release(@Param("id") Long id, @Param("agentId") Long agentId);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE OrderEntity o SET o.status = :to, " +
+           "o.preparingAt = COALESCE(:preparingAt, o.preparingAt), " +
+           "o.dispatchedAt = COALESCE(:dispatchedAt, o.dispatchedAt), " +
+           "o.deliveredAt = COALESCE(:deliveredAt, o.deliveredAt), " +
+           "o.cancelledAt = COALESCE(:cancelledAt, o.cancelledAt) " +
+           "WHERE o.id = :id AND o.status = :from AND (:agentId IS NULL OR o.assignedTo = :agentId)")
+    int compareAndSetStatus(@Param("id") Long id,
+                            @Param("from") OrderStatus from,
+                            @Param("to") OrderStatus to,
+                            @Param("agentId") Long agentId,
+                            @Param("preparingAt") Instant preparingAt,
+                            @Param("dispatchedAt") Instant dispatchedAt,
+                            @Param("deliveredAt") Instant deliveredAt,
+                            @Param("cancelledAt") Instant cancelledAt);
+
+    /**
+     * Move an order from the observed status to the target one, stamping the matching timestamp.
+     * When agentId is non-null the order must also be assigned to that agent.
+     */
+    default int transition(Long id, OrderStatus from, OrderStatus to, Long agentId, Instant now){
+        if (!OrderTransitions.allowed(from, to)) return 0;
+        return compareAndSetStatus(id, from, to, agentId,
+                to == OrderStatus.PREPARING ? now : null,
+                to == OrderStatus.OUT_FOR_DELIVERY ? now : null,
+                to == OrderStatus.DELIVERED ? now : null,
+                to == OrderStatus.CANCELLED ? now : null);
+    }
 }
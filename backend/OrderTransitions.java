@@ -0,0 +1,50 @@
+package com.hungerexpress.orders;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Allowed order status transitions. Every status change is applied as a conditional update
+ * from the status the caller observed, so a transition that lost a race affects no rows.
+ */
+public final class OrderTransitions {
+
+    private static final Map<OrderStatus, Set<OrderStatus>> NEXT = new EnumMap<>(OrderStatus.class);
+
+    static {
+        NEXT.put(OrderStatus.PLACED, EnumSet.of(OrderStatus.ACCEPTED, OrderStatus.PREPARING, OrderStatus.CANCELLED));
+        NEXT.put(OrderStatus.ACCEPTED, EnumSet.of(OrderStatus.PREPARING, OrderStatus.OUT_FOR_DELIVERY, OrderStatus.DELIVERED, OrderStatus.CANCELLED));
+        NEXT.put(OrderStatus.PREPARING, EnumSet.of(OrderStatus.OUT_FOR_DELIVERY, OrderStatus.DELIVERED, OrderStatus.CANCELLED));
+        NEXT.put(OrderStatus.OUT_FOR_DELIVERY, EnumSet.of(OrderStatus.DELIVERED));
+        NEXT.put(OrderStatus.DELIVERED, EnumSet.noneOf(OrderStatus.class));
+        NEXT.put(OrderStatus.CANCELLED, EnumSet.noneOf(OrderStatus.class));
+    }
+
+    private static final Set<OrderStatus> TERMINAL;
+
+    static {
+        Set<OrderStatus> terminal = EnumSet.noneOf(OrderStatus.class);
+        NEXT.forEach((status, next) -> {
+            if (next.isEmpty()) terminal.add(status);
+        });
+        TERMINAL = Collections.unmodifiableSet(terminal);
+    }
+
+    private OrderTransitions() {}
+
+    public static boolean allowed(OrderStatus from, OrderStatus to) {
+        return from != null && NEXT.get(from).contains(to);
+    }
+
+    public static boolean isTerminal(OrderStatus status) {
+        return NEXT.get(status).isEmpty();
+    }
+
+    /** Statuses an order never leaves. */
+    public static Set<OrderStatus> terminalStatuses() {
+        return TERMINAL;
+    }
+}
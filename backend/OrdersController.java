@@ -1,16 +1,16 @@
 package com.hungerexpress.orders;
 
 import com.hungerexpress.agent.AgentAssignmentService;
-import com.hungerexpress.agent.AgentOrderAssignment;
-import com.hungerexpress.agent.AgentOrderRepository;
 import com.hungerexpress.cart.CartItemDto;
+import com.hungerexpress.cart.CartSessions;
 import com.hungerexpress.cart.CartStore;
+import com.hungerexpress.common.ChangeVersions;
+import com.hungerexpress.common.CurrentPrincipal;
 import com.hungerexpress.common.CurrentUser;
+import com.hungerexpress.common.KeysetCursor;
 import com.hungerexpress.payments.PaymentEntity;
-import com.hungerexpress.payments.PaymentRepository;
-import com.hungerexpress.user.User;
-import com.hungerexpress.user.UserRepository;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -20,31 +20,52 @@ import java.math.BigDecimal;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
-import java.util.concurrent.CopyOnWriteArrayList;
 import org.springframework.http.MediaType;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
-import com.hungerexpress.coupons.CouponRepository;
-import com.hungerexpress.coupons.CouponEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import com.hungerexpress.coupons.CouponEngine;
 import java.time.Instant;
 
+@Slf4j
 @RestController
 @RequestMapping("/api/orders")
 @RequiredArgsConstructor
 public class OrdersController {
 
     private final CartStore cartStore;
+    private final CartSessions cartSessions;
     private final OrderRepository orders;
-    private final PaymentRepository payments;
-    private final UserRepository users;
-    private final CouponRepository coupons;
+    private final CurrentPrincipal principal;
+    private final CouponEngine couponEngine;
     private final AgentAssignmentService agentAssignmentService;
-    private final AgentOrderRepository agentOrderRepository;
+    private final OrderEventBus events;
+    private final OrderDispatchPool dispatch;
+    private final OrderCommands commands;
+    private final ChangeVersions changes;
 
     private static final DateTimeFormatter DF = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
-    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int FEED_DEFAULT_LIMIT = 50;
+    private static final int FEED_MAX_LIMIT = 200;
+    // Kanban shows everything past PLACED (PLACED orders live in the agent pool)
+    private static final Set<OrderStatus> KANBAN_STATUSES = EnumSet.complementOf(EnumSet.of(OrderStatus.PLACED));
+    // view=active lists work in progress, view=history everything that has finished
+    private static final Set<OrderStatus> HISTORY_STATUSES = EnumSet.copyOf(
+            Arrays.stream(OrderStatus.values()).filter(OrderTransitions::isTerminal).toList());
+    private static final Set<OrderStatus> ACTIVE_STATUSES = EnumSet.complementOf(EnumSet.copyOf(HISTORY_STATUSES));
 
     static OrderSummaryDto toDto(OrderEntity e){
         return new OrderSummaryDto(
@@ -63,7 +84,7 @@ public class OrdersController {
         Long uid = currentUserId();
         if (uid == null) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         
-        Optional<OrderEntity> orderOpt = orders.findByIdWithItems(id);
+        Optional<OrderEntity> orderOpt = orders.findById(id);
         if (orderOpt.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
@@ -73,25 +94,29 @@ public class OrdersController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
         
-        o.setStatus(OrderStatus.DELIVERED);
-        o.setDeliveredAt(Instant.now());
-        orders.save(o);
-        
-        AgentOrderAssignment a = agentOrderRepository.findTopByOrderIdOrderByAssignedAtDesc(o.getId());
-        if (a != null) { 
-            a.setDeliveredAt(Instant.now()); 
-            a.setStatus("DELIVERED"); 
-            agentOrderRepository.save(a); 
+        // Assignment bookkeeping and the broadcast run from the outbox (OrderEventRelay)
+        Set<String> before = OrderEventBus.topicsOf(o);
+        if (!commands.transition(id, o.getStatus(), OrderStatus.DELIVERED, uid, "delivered", uid, before)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         }
-        publishUpdate();
+        return applied(id);
+    }
+
+    // Reload the order after a committed change and return it; side effects follow from the outbox
+    private ResponseEntity<OrderSummaryDto> applied(Long id){
+        OrderEntity o = orders.findByIdWithItems(id).orElseThrow();
+        changed(o);
         return ResponseEntity.ok(toDto(o));
     }
 
+    // Bump the ETag versions of everything that renders this order
+    private void changed(OrderEntity o){
+        if (o.getUserId() != null) changes.bump(ChangeVersions.order(o.getId()), ChangeVersions.userOrders(o.getUserId()));
+        else changes.bump(ChangeVersions.order(o.getId()));
+    }
+
     private Long currentUserId(){
-        String email = Optional.ofNullable(CurrentUser.email()).orElse(null);
-        if (email == null) return null;
-        Optional<User> u = users.findByEmail(email);
-        return u.map(User::getId).orElse(null);
+        return principal.id();
     }
 
     record Address(String name, String phone, String line1, String line2, String city, String state, String postal, String country){}
@@ -99,54 +124,34 @@ public class OrdersController {
     record CreateOrderRequest(String providerOrderId, String couponCode, Address address, List<OrderItemRequest> items){}
 
     @PostMapping
-    public ResponseEntity<OrderSummaryDto> create(@RequestBody(required = false) CreateOrderRequest req){
-        System.out.println("🛒 ====== CREATE ORDER START ======");
-        System.out.println("📦 Request body: " + (req != null ? "present" : "null"));
-        
-        Long uid = currentUserId();
-        System.out.println("👤 User ID: " + uid);
-        
+    public ResponseEntity<OrderSummaryDto> create(@RequestBody(required = false) CreateOrderRequest req,
+                                                  @RequestHeader(name = CartSessions.HEADER, required = false) String cartSession){
         // IMPORTANT: Guest orders are allowed, but if a JWT token is present, always use it
-        if (uid != null) {
-            System.out.println("✅ Authenticated user detected - Order will be linked to userId: " + uid);
-        } else {
-            System.out.println("⚠️ WARNING: No userId found - Creating GUEST order (user_id = NULL)");
+        Long uid = currentUserId();
+        if (uid == null) {
+            log.debug("Creating guest order (user_id = NULL)");
         }
         
         // Use items from request if provided, otherwise use server cart
+        String cartKey = cartSessions.keyFor(CurrentUser.email(), cartSession);
         List<CartItemDto> items;
         if (req != null && req.items != null && !req.items.isEmpty()) {
-            System.out.println("✅ Using items from request body: " + req.items.size() + " items");
             items = req.items.stream()
                 .map(i -> new CartItemDto(i.id, i.name, i.price, null, i.qty))
                 .toList();
         } else {
-            System.out.println("⚠️  No items in request, checking cart store...");
-            items = new ArrayList<>(cartStore.get(Optional.ofNullable(CurrentUser.email()).orElse("guest")));
-            System.out.println("📋 Cart store items: " + items.size());
+            items = cartStore.snapshot(cartKey);
         }
         
         if (items.isEmpty()) {
-            System.out.println("❌ No items to order!");
+            log.debug("Rejecting order without items, userId={}", uid);
             return ResponseEntity.badRequest().build();
         }
 
         BigDecimal subtotal = items.stream().map(i -> BigDecimal.valueOf(i.price()).multiply(BigDecimal.valueOf(i.qty()))).reduce(BigDecimal.ZERO, BigDecimal::add);
-        BigDecimal discount = BigDecimal.ZERO;
-        String appliedCode = null;
-        if (req != null && req.couponCode != null && !req.couponCode.isBlank()){
-            Optional<CouponEntity> c = coupons.findByCodeAndActiveIsTrue(req.couponCode.toUpperCase());
-            if (c.isPresent()){
-                CouponEntity cc = c.get();
-                if ((cc.getExpiresAt() == null || !cc.getExpiresAt().isBefore(Instant.now()))
-                    && (cc.getMinAmount() == null || subtotal.compareTo(cc.getMinAmount()) >= 0)){
-                    if (cc.getPercentOff() != null) discount = discount.add(subtotal.multiply(BigDecimal.valueOf(cc.getPercentOff()).movePointLeft(2)));
-                    if (cc.getAmountOff() != null) discount = discount.add(cc.getAmountOff());
-                    if (discount.compareTo(subtotal) > 0) discount = subtotal;
-                    appliedCode = cc.getCode();
-                }
-            }
-        }
+        CouponEngine.Evaluation coupon = couponEngine.evaluate(subtotal, req != null ? req.couponCode : null);
+        BigDecimal discount = coupon.discount();
+        String appliedCode = coupon.code();
 
         OrderEntity e = OrderEntity.builder()
                 .userId(uid)
@@ -178,149 +183,225 @@ public class OrdersController {
                 .build()).collect(Collectors.toList());
         e.setItems(its);
         
-        System.out.println("💾 Saving order with " + its.size() + " items...");
-        System.out.println("📌 Order will be saved with userId: " + uid);
-        OrderEntity saved = orders.save(e);
-        System.out.println("✅ Order saved! ID: " + saved.getId() + " | userId: " + saved.getUserId());
-        
-        publishUpdate();
-        
-        // Link payment to order if providerOrderId present
-        if (req != null && req.providerOrderId != null) {
-            payments.findByProviderOrderId(req.providerOrderId).ifPresent(p -> {
-                p.setOrder(e);
-                p.setStatus("AUTHORIZED");
-                payments.save(p);
-            });
-        }
+        // Order and its "created" outbox row commit together; payment linking, the dispatch pool
+        // and the broadcast are applied by OrderEventRelay
+        OrderEntity saved = commands.create(e, req != null ? req.providerOrderId : null);
+        log.info("Order created orderId={} userId={} items={} total={}", saved.getId(), saved.getUserId(), its.size(), saved.getTotal());
+        changed(saved);
 
-        cartStore.clear(Optional.ofNullable(CurrentUser.email()).orElse("guest"));
+        cartStore.clear(cartKey);
         return ResponseEntity.ok(toDto(e));
     }
 
     @GetMapping
-    public ResponseEntity<List<OrderSummaryDto>> list(@RequestParam(required = false) String view){
+    public ResponseEntity<List<OrderSummaryDto>> list(@RequestParam(required = false) String view,
+                                                      @RequestParam(required = false) List<OrderStatus> status,
+                                                      @RequestParam(required = false) String cursor,
+                                                      @RequestParam(required = false) Integer limit,
+                                                      @RequestHeader(name = ChangeVersions.IF_NONE_MATCH, required = false) String ifNoneMatch){
         Long uid = currentUserId();
-        System.out.println("📋 Listing orders for user ID: " + uid);
         if (uid == null) return ResponseEntity.status(401).build();
         
-        // If view=all and user is owner/admin, return all orders for kanban board
+        // If view=all and user is owner/admin, return one keyset page of the kanban feed
         if ("all".equals(view)) {
             // TODO: Add proper role check (OWNER/ADMIN) when security is fully configured
             // For now, allow any authenticated user to view all orders
-            List<OrderSummaryDto> res = orders.findAllWithItems().stream()
-                .filter(o -> o.getStatus() != OrderStatus.PLACED) // Kanban shows PREPARING, OUT_FOR_DELIVERY, DELIVERED
-                .map(OrdersController::toDto)
-                .toList();
-            return ResponseEntity.ok(res);
+            Set<OrderStatus> statuses = EnumSet.copyOf(KANBAN_STATUSES);
+            if (status != null && !status.isEmpty()) statuses.retainAll(status);
+            if (statuses.isEmpty()) return ResponseEntity.ok(List.of());
+            KeysetCursor after;
+            try {
+                after = KeysetCursor.decode(cursor);
+            } catch (IllegalArgumentException ex) {
+                return ResponseEntity.badRequest().build();
+            }
+            return feedPage(statuses, after, limit);
         }
         
-        // Default: return current user's orders only
+        // Active or history: one keyset page, so the payload does not grow with the customer's tenure.
+        // The tag covers the page (view, cursor, limit), not just the user's order list.
+        Set<OrderStatus> split = splitStatuses(view);
+        if (split != null) {
+            KeysetCursor after;
+            try {
+                after = KeysetCursor.decode(cursor);
+            } catch (IllegalArgumentException ex) {
+                return ResponseEntity.badRequest().build();
+            }
+            String pageTag = changes.etag(ChangeVersions.userOrders(uid), view + "|" + cursor + "|" + limit);
+            if (ChangeVersions.matches(ifNoneMatch, pageTag)) return ChangeVersions.notModified(pageTag);
+            return page(after, limit, pageTag, (a, page) -> a == null
+                    ? orders.findUserPageFirst(uid, split, page)
+                    : orders.findUserPageAfter(uid, split, a.createdAt(), a.id(), page));
+        }
+
+        // Current user's orders only, or 304 if the client's copy is current
+        String etag = changes.etag(ChangeVersions.userOrders(uid));
+        if (ChangeVersions.matches(ifNoneMatch, etag)) return ChangeVersions.notModified(etag);
+
+        // Default: every order the user has placed, newest first
         List<OrderSummaryDto> res = orders.findByUserIdWithItemsOrderByCreatedAtDesc(uid).stream().map(OrdersController::toDto).toList();
-        System.out.println("✅ Returning " + res.size() + " orders for user ID: " + uid);
-        res.forEach(o -> System.out.println("   Order #" + o.id() + " - Total: ₹" + o.total() + " - Items: " + o.items().size()));
-        return ResponseEntity.ok(res);
+        log.debug("Returning {} orders for userId={}", res.size(), uid);
+        return ChangeVersions.ok(etag, res);
+    }
+
+    private ResponseEntity<List<OrderSummaryDto>> feedPage(Set<OrderStatus> statuses, KeysetCursor after, Integer limit){
+        return page(after, limit, null, (a, page) -> a == null
+                ? orders.findFeedFirstPage(statuses, page)
+                : orders.findFeedAfter(statuses, a.createdAt(), a.id(), page));
+    }
+
+    /** Statuses for view=active or view=history, or null for any other view. */
+    private static Set<OrderStatus> splitStatuses(String view){
+        if ("active".equals(view)) return ACTIVE_STATUSES;
+        if ("history".equals(view)) return HISTORY_STATUSES;
+        return null;
+    }
+
+    // Fetch limit+1 slim rows to detect a next page, then load items for the returned rows only
+    private ResponseEntity<List<OrderSummaryDto>> page(KeysetCursor after, Integer limit, String etag,
+                                                       BiFunction<KeysetCursor, PageRequest, List<OrderFeedRow>> query){
+        int size = limit == null ? FEED_DEFAULT_LIMIT : Math.max(1, Math.min(limit, FEED_MAX_LIMIT));
+        List<OrderFeedRow> rows = query.apply(after, PageRequest.of(0, size + 1));
+
+        boolean hasMore = rows.size() > size;
+        if (hasMore) rows = rows.subList(0, size);
+
+        List<OrderSummaryDto> res = toDtos(rows);
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok();
+        if (etag != null) ok.eTag(etag).cacheControl(ChangeVersions.REVALIDATE);
+        if (hasMore) {
+            OrderFeedRow last = rows.get(rows.size() - 1);
+            ok.header(NEXT_CURSOR_HEADER, new KeysetCursor(last.createdAt(), last.id()).encode());
+        }
+        return ok.body(res);
+    }
+
+    private List<OrderSummaryDto> toDtos(List<OrderFeedRow> rows){
+        if (rows.isEmpty()) return List.of();
+        Map<Long, List<OrderItemDto>> itemsByOrder = new LinkedHashMap<>();
+        rows.forEach(r -> itemsByOrder.put(r.id(), new ArrayList<>()));
+        for (OrderItemRow i : orders.findItemRowsByOrderIds(itemsByOrder.keySet())) {
+            itemsByOrder.get(i.orderId()).add(new OrderItemDto(i.id(), i.name(), i.price().doubleValue(), i.qty()));
+        }
+        return rows.stream().map(r -> new OrderSummaryDto(
+                r.id(),
+                r.status().name(),
+                r.total().doubleValue(),
+                r.createdAt().toEpochMilli(),
+                itemsByOrder.get(r.id())
+        )).toList();
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<OrderSummaryDto> get(@PathVariable Long id){
-        return orders.findByIdWithItems(id).map(OrdersController::toDto).map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<OrderSummaryDto> get(@PathVariable Long id,
+                                               @RequestHeader(name = ChangeVersions.IF_NONE_MATCH, required = false) String ifNoneMatch){
+        // Version read before the load, so a concurrent change can only make the tag older than the body
+        String etag = changes.etag(ChangeVersions.order(id));
+        if (ChangeVersions.matches(ifNoneMatch, etag)) return ChangeVersions.notModified(etag);
+        return orders.findByIdWithItems(id).map(OrdersController::toDto)
+                .<ResponseEntity<OrderSummaryDto>>map(o -> ChangeVersions.ok(etag, o))
+                .orElse(ResponseEntity.notFound().build());
     }
 
     // Route endpoint removed (map/navigation feature not used)
 
     @PatchMapping("/{id}/status")
     public ResponseEntity<OrderSummaryDto> updateStatus(@PathVariable Long id, @RequestParam OrderStatus status){
-        return orders.findById(id).map(o -> {
-            o.setStatus(status);
-            Instant now = Instant.now();
-            switch (status){
-                case PREPARING -> o.setPreparingAt(now);
-                case OUT_FOR_DELIVERY -> {
-                    o.setDispatchedAt(now);
-                    if (o.getAssignedTo() != null) {
-                        AgentOrderAssignment a = agentOrderRepository.findTopByOrderIdOrderByAssignedAtDesc(o.getId());
-                        if (a != null) { a.setPickedUpAt(now); a.setStatus("OUT_FOR_DELIVERY"); agentOrderRepository.save(a); }
-                    }
-                }
-                case DELIVERED -> {
-                    o.setDeliveredAt(now);
-                    if (o.getAssignedTo() != null) {
-                        AgentOrderAssignment a = agentOrderRepository.findTopByOrderIdOrderByAssignedAtDesc(o.getId());
-                        if (a != null) { a.setDeliveredAt(now); a.setStatus("DELIVERED"); agentOrderRepository.save(a); }
-                    }
-                }
-                case CANCELLED -> o.setCancelledAt(now);
-                default -> {}
-            }
-            orders.save(o);
-            publishUpdate();
-            return ResponseEntity.ok(toDto(o));
-        }).orElse(ResponseEntity.notFound().build());
+        OrderEntity o = orders.findById(id).orElse(null);
+        if (o == null) return ResponseEntity.notFound().build();
+
+        Set<String> before = OrderEventBus.topicsOf(o);
+        // Fails when the transition is not in the table or the order moved on since we read it
+        if (!commands.transition(id, o.getStatus(), status, null, "status", o.getAssignedTo(), before)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return applied(id);
     }
 
     @PatchMapping("/{id}/cancel")
     public ResponseEntity<OrderSummaryDto> cancel(@PathVariable Long id){
-        return orders.findById(id).map(o -> {
-            if (o.getStatus() == OrderStatus.PLACED || o.getStatus() == OrderStatus.PREPARING){
-                o.setStatus(OrderStatus.CANCELLED);
-                o.setCancelledAt(Instant.now());
-                orders.save(o);
-                payments.findTopByOrder_IdOrderByCreatedAtDesc(o.getId()).ifPresent(p -> {
-                    p.setStatus("REFUND_REQUESTED");
-                    payments.save(p);
-                });
-                publishUpdate();
-                return ResponseEntity.ok(toDto(o));
-            }
-            return ResponseEntity.status(409).<OrderSummaryDto>build();
-        }).orElse(ResponseEntity.notFound().build());
+        OrderEntity o = orders.findById(id).orElse(null);
+        if (o == null) return ResponseEntity.notFound().build();
+        if (o.getStatus() != OrderStatus.PLACED && o.getStatus() != OrderStatus.PREPARING) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+
+        // The refund request on the payment is made by OrderEventRelay
+        Set<String> before = OrderEventBus.topicsOf(o);
+        if (!commands.transition(id, o.getStatus(), OrderStatus.CANCELLED, null, "cancelled", o.getAssignedTo(), before)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return applied(id);
     }
 
-    // SSE stream for real-time updates
+    // SSE stream of order deltas. topics: mine, assigned, kanban, available (defaults to mine, or kanban for guests)
     @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter stream(){
-        SseEmitter emitter = new SseEmitter(0L);
-        emitters.add(emitter);
-        emitter.onCompletion(() -> emitters.remove(emitter));
-        emitter.onTimeout(() -> emitters.remove(emitter));
-        // push initial payload
-        try { emitter.send(SseEmitter.event().name("snapshot").data("init")); } catch (Exception ignored) {}
-        return emitter;
+    public ResponseEntity<SseEmitter> stream(@RequestParam(required = false) List<String> topics,
+                                             @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId){
+        Long uid = currentUserId();
+        List<String> requested = topics == null || topics.isEmpty() ? List.of(uid != null ? "mine" : "kanban") : topics;
+        Set<String> resolved = new HashSet<>();
+        for (String t : requested) {
+            switch (t) {
+                case "mine" -> { if (uid == null) return ResponseEntity.status(401).build(); resolved.add(OrderEventBus.customer(uid)); }
+                case "assigned" -> { if (uid == null) return ResponseEntity.status(401).build(); resolved.add(OrderEventBus.agent(uid)); }
+                case "available" -> { if (!hasRole("AGENT")) return ResponseEntity.status(403).build(); resolved.add(OrderEventBus.AVAILABLE); }
+                // TODO: restrict to OWNER/ADMIN together with view=all
+                case "kanban" -> resolved.add(OrderEventBus.KANBAN);
+                default -> { return ResponseEntity.badRequest().build(); }
+            }
+        }
+        Long resumeFrom = null;
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            try { resumeFrom = Long.parseLong(lastEventId.trim()); } catch (NumberFormatException ignored) {}
+        }
+        return ResponseEntity.ok(events.subscribe(resolved, resumeFrom));
     }
 
-    private void publishUpdate(){
-        List<SseEmitter> dead = new ArrayList<>();
-        emitters.forEach(em -> {
-            try { em.send(SseEmitter.event().name("orders:update").data("changed")); }
-            catch (Exception e){ dead.add(em); }
-        });
-        emitters.removeAll(dead);
+    private static boolean hasRole(String role){
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return auth != null && auth.getAuthorities().stream().anyMatch(a -> ("ROLE_" + role).equals(a.getAuthority()));
     }
 
     // Agent: get assigned orders for current agent
     @PreAuthorize("hasRole('AGENT')")
     @GetMapping("/agent/my")
-    public ResponseEntity<List<OrderSummaryDto>> myAssigned(){
+    public ResponseEntity<List<OrderSummaryDto>> myAssigned(@RequestParam(required = false) String view,
+                                                            @RequestParam(required = false) String cursor,
+                                                            @RequestParam(required = false) Integer limit){
         Long uid = currentUserId();
         if (uid == null) return ResponseEntity.status(401).build();
+        // view=active or view=history: one keyset page instead of every order the agent ever had
+        Set<OrderStatus> split = splitStatuses(view);
+        if (split != null) {
+            KeysetCursor after;
+            try {
+                after = KeysetCursor.decode(cursor);
+            } catch (IllegalArgumentException ex) {
+                return ResponseEntity.badRequest().build();
+            }
+            return page(after, limit, null, (a, page) -> a == null
+                    ? orders.findAgentPageFirst(uid, split, page)
+                    : orders.findAgentPageAfter(uid, split, a.createdAt(), a.id(), page));
+        }
         List<OrderSummaryDto> res = orders.findByAssignedToWithItems(uid).stream()
                 .map(OrdersController::toDto).toList();
         return ResponseEntity.ok(res);
     }
 
-    // Assign order to current agent
+    // Assign order to current agent (only if nobody else holds it)
     @PreAuthorize("hasRole('AGENT')")
     @PatchMapping("/{id}/assign/me")
     public ResponseEntity<OrderSummaryDto> assignMe(@PathVariable Long id){
         Long uid = currentUserId();
         if (uid == null) return ResponseEntity.status(401).build();
-        return orders.findById(id).map(o -> {
-            o.setAssignedTo(uid);
-            orders.save(o);
-            publishUpdate();
-            return ResponseEntity.ok(toDto(o));
-        }).orElse(ResponseEntity.notFound().build());
+        OrderEntity o = orders.findById(id).orElse(null);
+        if (o == null) return ResponseEntity.notFound().build();
+
+        Set<String> before = OrderEventBus.topicsOf(o);
+        if (!commands.assignIfFree(id, uid, before)) return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        return applied(id);
     }
 
     // Agent: Accept order
@@ -329,31 +410,24 @@ public class OrdersController {
     public ResponseEntity<OrderSummaryDto> acceptOrder(@PathVariable Long id){
         Long uid = currentUserId();
         if (uid == null) return ResponseEntity.status(401).build();
-        
-        return orders.findByIdWithItems(id).map(o -> {
-            // Only allow accepting PLACED orders
-            if (o.getStatus() != OrderStatus.PLACED) {
-                return ResponseEntity.status(409).<OrderSummaryDto>build();
-            }
-            
-            // Assign to current agent and mark as accepted
-            o.setAssignedTo(uid);
-            o.setStatus(OrderStatus.ACCEPTED);
-            o.setPreparingAt(Instant.now()); // Mark when agent accepted
-            orders.save(o);
-
-            // Record assignment lifecycle row
-            AgentOrderAssignment a = AgentOrderAssignment.builder()
-                    .agentId(uid)
-                    .orderId(o.getId())
-                    .status("ACCEPTED")
-                    .build();
-            agentOrderRepository.save(a);
-            publishUpdate();
-            
-            System.out.println("✅ Order " + id + " accepted by agent " + uid);
-            return ResponseEntity.ok(toDto(o));
-        }).orElse(ResponseEntity.notFound().build());
+        OrderEntity o = orders.findById(id).orElse(null);
+        if (o == null) return ResponseEntity.notFound().build();
+
+        // The conditional update decides; the pool entry is taken so other agents stop seeing the
+        // order, and put back if the claim does not go through
+        Set<String> before = OrderEventBus.topicsOf(o);
+        boolean pooled = dispatch.tryClaim(id);
+        boolean claimed = false;
+        try {
+            // The assignment lifecycle row is written by OrderEventRelay from the "accepted" outbox event
+            claimed = commands.claim(id, uid, before);
+        } finally {
+            if (pooled && !claimed) dispatch.restore(id);
+        }
+        if (!claimed) return ResponseEntity.status(HttpStatus.CONFLICT).build();
+
+        log.info("Order accepted orderId={} agentId={}", id, uid);
+        return applied(id);
     }
 
     // Agent: Reject order
@@ -362,30 +436,22 @@ public class OrdersController {
     public ResponseEntity<OrderSummaryDto> rejectOrder(@PathVariable Long id){
         Long uid = currentUserId();
         if (uid == null) return ResponseEntity.status(401).build();
+        OrderEntity o = orders.findById(id).orElse(null);
+        if (o == null) return ResponseEntity.notFound().build();
+
+        // Only PLACED orders held by this agent (or nobody) go back to the pool for other agents
+        Set<String> before = OrderEventBus.topicsOf(o);
+        if (!commands.release(id, uid, before)) return ResponseEntity.status(HttpStatus.CONFLICT).build();
         
-        return orders.findByIdWithItems(id).map(o -> {
-            // Only allow rejecting PLACED orders
-            if (o.getStatus() != OrderStatus.PLACED) {
-                return ResponseEntity.status(409).<OrderSummaryDto>build();
-            }
-            
-            // Remove assignment and keep as PLACED for other agents
-            o.setAssignedTo(null);
-            orders.save(o);
-            publishUpdate();
-            
-            System.out.println("❌ Order " + id + " rejected by agent " + uid);
-            return ResponseEntity.ok(toDto(o));
-        }).orElse(ResponseEntity.notFound().build());
+        log.info("Order rejected orderId={} agentId={}", id, uid);
+        return applied(id);
     }
 
     // Get unassigned orders for agents to accept/reject
     @PreAuthorize("hasRole('AGENT')")
     @GetMapping("/agent/available")
     public ResponseEntity<List<OrderSummaryDto>> getAvailableOrders(){
-        List<OrderSummaryDto> res = orders.findAvailableOrdersWithItems().stream()
-                .map(OrdersController::toDto)
-                .toList();
-        return ResponseEntity.ok(res);
+        // Served from the in-memory dispatch pool; new orders are pushed on the "available" SSE topic
+        return ResponseEntity.ok(dispatch.available());
     }
 }
@@ -0,0 +1,112 @@
+package com.hungerexpress.auth;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Password hashing on its own small pool, so a burst of logins cannot take every core from order traffic.
+ *
+ * The pool gets a configurable share of the CPUs. Callers beyond the pool wait in a bounded queue;
+ * one that cannot get a place within the wait time gets {@link HashingBusyException}, which the auth
+ * endpoints turn into 503 with Retry-After. Both bounds are enforced by one semaphore of
+ * threads + queue permits, held from admission until the hash is done.
+ */
+@Component
+public class PasswordHashing {
+
+    private final PasswordEncoder encoder;
+    private final ExecutorService pool;
+    private final Semaphore admission;
+    private final int capacity;
+    private final long waitMs;
+    private final long retryAfterSeconds;
+    private final Counter rejected;
+
+    public PasswordHashing(PasswordEncoder encoder, MeterRegistry meters,
+                           @Value("${app.auth.hashing.cpu-share:0.5}") double cpuShare,
+                           @Value("${app.auth.hashing.queue:64}") int queue,
+                           @Value("${app.auth.hashing.wait-ms:2000}") long waitMs,
+                           @Value("${app.auth.hashing.retry-after-seconds:2}") long retryAfterSeconds) {
+        this.encoder = encoder;
+        int threads = Math.max(1, (int) Math.floor(Runtime.getRuntime().availableProcessors() * cpuShare));
+        AtomicInteger n = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "password-hashing-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.capacity = threads + Math.max(0, queue);
+        this.admission = new Semaphore(capacity);
+        this.waitMs = waitMs;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.rejected = meters.counter("hungerexpress.auth.hashing.rejected");
+        meters.gauge("hungerexpress.auth.hashing.threads", threads);
+        meters.gauge("hungerexpress.auth.hashing.in_flight", admission, s -> capacity - s.availablePermits());
+    }
+
+    public String encode(CharSequence raw) {
+        return run(() -> encoder.encode(raw));
+    }
+
+    public boolean matches(CharSequence raw, String hash) {
+        return run(() -> encoder.matches(raw, hash));
+    }
+
+    /** True when the stored hash was made with weaker settings than the encoder now uses. */
+    public boolean needsRehash(String hash) {
+        return encoder.upgradeEncoding(hash);
+    }
+
+    private <T> T run(Callable<T> task) {
+        try {
+            if (!admission.tryAcquire(waitMs, TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new HashingBusyException(retryAfterSeconds);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HashingBusyException(retryAfterSeconds);
+        }
+        Future<T> f;
+        try {
+            f = pool.submit(() -> {
+                try {
+                    return task.call();
+                } finally {
+                    admission.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            admission.release();
+            throw e;
+        }
+        try {
+            // Admitted work is never abandoned: a hash takes milliseconds and its permit is freed either way
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HashingBusyException(retryAfterSeconds);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -9,7 +9,10 @@ import java.time.Instant;
 @Entity
 @Table(name = "refresh_token", indexes = {
         @Index(name = "idx_rt_token", columnList = "token", unique = true),
-        @Index(name = "idx_rt_user", columnList = "user_id")
+        @Index(name = "idx_rt_user", columnList = "user_id"),
+        @Index(name = "idx_rt_family", columnList = "family_id"),
+        @Index(name = "idx_rt_expires", columnList = "expires_at"),
+        @Index(name = "idx_rt_revoked_at", columnList = "revoked_at")
 })
 @Getter
 @Setter
@@ -31,9 +34,17 @@ public class RefreshToken {
     @Column(nullable = false)
     private Instant expiresAt;
 
+    // Shared by every token rotated from the same login; null for tokens issued before families existed
+    @Column(name = "family_id", length = 36)
+    private String familyId;
+
     @Builder.Default
     private boolean revoked = false;
 
+    // When the token was rotated or revoked; the purge keeps it for reuse detection counting from here
+    @Column(name = "revoked_at")
+    private Instant revokedAt;
+
     @Builder.Default
     private Instant createdAt = Instant.now();
 }
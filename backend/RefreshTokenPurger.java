@@ -0,0 +1,49 @@
+package com.hungerexpress.auth;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Deletes expired refresh tokens, and revoked ones once reuse detection no longer needs them.
+ * Works in small id batches, each its own transaction, so the purge never holds long locks on
+ * refresh_token while logins and rotations keep running.
+ */
+@Slf4j
+@Component
+public class RefreshTokenPurger {
+
+    private static final int MAX_BATCHES_PER_RUN = 200;
+
+    private final RefreshTokenRepository refreshTokens;
+    private final int batchSize;
+    private final Duration revokedRetention;
+
+    public RefreshTokenPurger(RefreshTokenRepository refreshTokens,
+                              @Value("${app.auth.refresh.purge-batch:1000}") int batchSize,
+                              @Value("${app.auth.refresh.revoked-retention-days:7}") int revokedRetentionDays) {
+        this.refreshTokens = refreshTokens;
+        this.batchSize = batchSize;
+        this.revokedRetention = Duration.ofDays(revokedRetentionDays);
+    }
+
+    @Scheduled(fixedDelayString = "${app.auth.refresh.purge-ms:3600000}", initialDelayString = "${app.auth.refresh.purge-ms:3600000}")
+    public void purge() {
+        Instant now = Instant.now();
+        Instant revokedBefore = now.minus(revokedRetention);
+        int total = 0;
+        for (int i = 0; i < MAX_BATCHES_PER_RUN; i++) {
+            List<Long> ids = refreshTokens.findPurgeable(now, revokedBefore, PageRequest.of(0, batchSize));
+            if (ids.isEmpty()) break;
+            total += refreshTokens.deleteByIdIn(ids);
+            if (ids.size() < batchSize) break;
+        }
+        if (total > 0) log.info("Purged {} expired or revoked refresh tokens", total);
+    }
+}
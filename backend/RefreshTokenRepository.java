@@ -1,13 +1,44 @@
 package com.hungerexpress.auth;
 
 import com.hungerexpress.user.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
     Optional<RefreshToken> findByToken(String token);
     void deleteAllByUser(User user);
-}
 
+    // Rotation: only one caller can retire a token; 0 means it was already used
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE RefreshToken r SET r.revoked = true, r.revokedAt = :now WHERE r.id = :id AND r.revoked = false")
+    int revokeIfActive(@Param("id") Long id, @Param("now") Instant now);
+
+    // Reuse of a rotated token: kill every live token descended from the same login
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE RefreshToken r SET r.revoked = true, r.revokedAt = :now WHERE r.familyId = :familyId AND r.revoked = false")
+    int revokeFamily(@Param("familyId") String familyId, @Param("now") Instant now);
+
+    @Query("SELECT r.token FROM RefreshToken r WHERE r.familyId = :familyId")
+    List<String> findTokensByFamily(@Param("familyId") String familyId);
 
+    // Purge candidates: expired, or revoked long enough ago that reuse detection no longer needs them.
+    // Tokens revoked before revoked_at existed have none and are left to expire.
+    @Query("SELECT r.id FROM RefreshToken r WHERE r.expiresAt < :now OR (r.revoked = true AND r.revokedAt < :revokedBefore)")
+    List<Long> findPurgeable(@Param("now") Instant now, @Param("revokedBefore") Instant revokedBefore, Pageable page);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM RefreshToken r WHERE r.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+}
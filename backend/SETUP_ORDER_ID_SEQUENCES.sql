@@ -0,0 +1,33 @@
+-- =========================================================================
+-- ORDER ID SEQUENCES (run once before deploying pooled order ids)
+-- =========================================================================
+-- Database: foodexpress
+-- OrderEntity, OrderItemEntity and OrderEventEntity now take ids from
+-- pooled sequences (blocks of 50) instead of AUTO_INCREMENT, which lets
+-- Hibernate batch the order, item and outbox inserts. MySQL has no sequences, so Hibernate keeps the
+-- next value in a one-row table per sequence.
+-- This script creates those tables and starts them above the current
+-- max id so new orders never collide with existing rows.
+-- =========================================================================
+
+USE foodexpress;
+
+CREATE TABLE IF NOT EXISTS orders_seq (next_val BIGINT NOT NULL) ENGINE=InnoDB;
+CREATE TABLE IF NOT EXISTS order_item_seq (next_val BIGINT NOT NULL) ENGINE=InnoDB;
+CREATE TABLE IF NOT EXISTS order_event_seq (next_val BIGINT NOT NULL) ENGINE=InnoDB;
+
+DELETE FROM orders_seq;
+DELETE FROM order_item_seq;
+DELETE FROM order_event_seq;
+
+-- Leave a full allocation block of headroom above the existing ids
+INSERT INTO orders_seq (next_val) SELECT COALESCE(MAX(id), 0) + 100 FROM orders;
+INSERT INTO order_item_seq (next_val) SELECT COALESCE(MAX(id), 0) + 100 FROM order_item;
+INSERT INTO order_event_seq (next_val) SELECT COALESCE(MAX(id), 0) + 100 FROM order_event;
+
+-- Verify
+SELECT 'orders_seq' AS sequence_table, next_val FROM orders_seq
+UNION ALL
+SELECT 'order_item_seq', next_val FROM order_item_seq
+UNION ALL
+SELECT 'order_event_seq', next_val FROM order_event_seq;
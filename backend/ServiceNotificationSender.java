@@ -0,0 +1,19 @@
+package com.hungerexpress.notification;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/** Default sender: the in-app notification insert and mail delivery done by {@link NotificationService}. */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.notifications.sender", havingValue = "service", matchIfMissing = true)
+public class ServiceNotificationSender implements NotificationSender {
+
+    private final NotificationService notificationService;
+
+    @Override
+    public void send(NotificationOutboxEntity n) {
+        notificationService.sendNotification(n.getUserId(), n.getType(), n.getTitle(), n.getMessage(), n.getRelatedId());
+    }
+}
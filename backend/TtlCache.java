@@ -0,0 +1,108 @@
+package com.hungerexpress.common;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Small bounded cache with per-entry expiry.
+ * Meant for hot lookups (JWT claims, principals) where a cache library would be overkill. Reads are
+ * lock-free on a ConcurrentHashMap; the size bound is kept by batched LRU eviction when a put takes
+ * the cache over its limit.
+ */
+public class TtlCache<K, V> {
+
+    private static final class Entry<V> {
+        final V value;
+        final long expiresAt;
+        volatile long lastAccess;
+
+        Entry(V value, long expiresAt, long now) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.lastAccess = now;
+        }
+    }
+
+    private final int maxSize;
+    private final long defaultTtlMs;
+    private final ConcurrentHashMap<K, Entry<V>> map = new ConcurrentHashMap<>();
+    // One evicting thread at a time; the others carry on and may briefly see the map over its bound
+    private final ReentrantLock evicting = new ReentrantLock();
+
+    public TtlCache(int maxSize, long defaultTtlMs) {
+        this.maxSize = maxSize;
+        this.defaultTtlMs = defaultTtlMs;
+    }
+
+    public V get(K key) {
+        Entry<V> e = map.get(key);
+        if (e == null) return null;
+        long now = System.currentTimeMillis();
+        if (e.expiresAt <= now) {
+            map.remove(key, e);
+            return null;
+        }
+        e.lastAccess = now;
+        return e.value;
+    }
+
+    public void put(K key, V value) {
+        put(key, value, System.currentTimeMillis() + defaultTtlMs);
+    }
+
+    /** Store with an absolute expiry (epoch millis), capped by the default TTL. */
+    public void put(K key, V value, long expiresAt) {
+        long now = System.currentTimeMillis();
+        map.put(key, new Entry<>(value, Math.min(expiresAt, now + defaultTtlMs), now));
+        if (map.size() > maxSize) evict(now);
+    }
+
+    public void invalidate(K key) {
+        map.remove(key);
+    }
+
+    public void invalidateIf(Predicate<V> predicate) {
+        map.values().removeIf(e -> predicate.test(e.value));
+    }
+
+    /** Drop expired entries; callers may run this periodically to release memory early. */
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        map.values().removeIf(e -> e.expiresAt <= now);
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    // Over the bound: drop expired entries, then the least recently read down to 90% of the bound, so
+    // the O(n log n) pass runs once per tenth of the capacity in puts rather than on every put
+    private void evict(long now) {
+        if (!evicting.tryLock()) return;
+        try {
+            if (map.size() <= maxSize) return;
+            map.values().removeIf(e -> e.expiresAt <= now);
+            int excess = map.size() - maxSize * 9 / 10;
+            if (excess <= 0) return;
+            long[] accessed = new long[map.size()];
+            int n = 0;
+            for (Entry<V> e : map.values()) {
+                if (n == accessed.length) break;
+                accessed[n++] = e.lastAccess;
+            }
+            // Entries can vanish between the size check and the sample
+            if (n == 0) return;
+            Arrays.sort(accessed, 0, n);
+            long cutoff = accessed[Math.min(excess, n) - 1];
+            map.values().removeIf(e -> e.lastAccess <= cutoff);
+        } finally {
+            evicting.unlock();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.hungerexpress.user;
+
+import com.hungerexpress.common.TtlCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded email -> User cache for the lookups that still need the entity.
+ * Entries expire after a short TTL and are dropped whenever a User row is updated or deleted
+ * (see {@link UserCacheInvalidator}). The cache holds detached snapshots, never the managed entity
+ * of the session that loaded it, and every caller gets its own copy. Snapshots carry id, email, name
+ * and role only (no password hash): use them as references and for display, never save one.
+ */
+@Component
+public class UserCache {
+
+    private final UserRepository users;
+    private final TtlCache<String, User> byEmail;
+    // Bumped by every eviction; a load that raced one is not cached, so it cannot bring back the old row
+    private final AtomicLong evictions = new AtomicLong();
+
+    public UserCache(UserRepository users,
+                     @Value("${app.user-cache.max-size:10000}") int maxSize,
+                     @Value("${app.user-cache.ttl-ms:300000}") long ttlMs) {
+        this.users = users;
+        this.byEmail = new TtlCache<>(maxSize, ttlMs);
+    }
+
+    public Optional<User> findByEmail(String email) {
+        if (email == null) return Optional.empty();
+        User cached = byEmail.get(email);
+        if (cached != null) return Optional.of(snapshot(cached));
+        long seen = evictions.get();
+        Optional<User> u = users.findByEmail(email).map(UserCache::snapshot);
+        u.ifPresent(user -> {
+            if (evictions.get() == seen) byEmail.put(email, user);
+        });
+        return u.map(UserCache::snapshot);
+    }
+
+    public void evict(String email) {
+        if (email == null) return;
+        evictions.incrementAndGet();
+        byEmail.invalidate(email);
+    }
+
+    public void evictById(Long id) {
+        evictions.incrementAndGet();
+        byEmail.invalidateIf(u -> Objects.equals(u.getId(), id));
+    }
+
+    private static User snapshot(User u) {
+        return User.builder()
+                .id(u.getId())
+                .email(u.getEmail())
+                .fullName(u.getFullName())
+                .role(u.getRole())
+                .build();
+    }
+}
@@ -0,0 +1,61 @@
+#!/usr/bin/env bash
+# Platform vs virtual threads under the same load, end to end.
+#
+# Builds the jar, then for each spring.threads.virtual.enabled mode starts the app, runs
+# src/loadtest/java/.../ExecutionModeLoadTest.java against it (about 1k held clients: open
+# /api/orders/stream subscriptions plus closed-loop order list requests) and stops it again.
+# Reports land in target/loadtest/<mode>.txt, app logs next to them.
+#
+# The app reads its usual environment (.env.example: DB_*, APP_JWT_SECRET, ...), so point it at a
+# database with representative orders. Needs Java 21 and an open-files limit above the client count.
+#
+#   loadtest/run.sh                      # 1000 clients, 500 of them SSE, 15s warmup, 60s measured
+#   CLIENTS=2000 SSE=1500 DURATION=120 loadtest/run.sh
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+PORT="${PORT:-8080}"
+CLIENTS="${CLIENTS:-1000}"
+SSE="${SSE:-500}"
+WARMUP="${WARMUP:-15}"
+DURATION="${DURATION:-60}"
+MODES="${MODES:-false true}"
+OUT=target/loadtest
+
+ulimit -n "$(( CLIENTS * 2 + 1024 ))" 2>/dev/null || echo "warning: could not raise open-files limit ($(ulimit -n))" >&2
+
+./mvnw -B -q -DskipTests package
+JAR="$(ls target/backend-*.jar | grep -v '\.original$' | head -n 1)"
+mkdir -p "$OUT"
+
+app=""
+stop_app() {
+  if [[ -n "$app" ]] && kill -0 "$app" 2>/dev/null; then
+    kill "$app"
+    wait "$app" 2>/dev/null || true
+  fi
+  app=""
+}
+trap stop_app EXIT
+
+for mode in $MODES; do
+  echo "== spring.threads.virtual.enabled=$mode"
+  java -jar "$JAR" --server.port="$PORT" --spring.threads.virtual.enabled="$mode" > "$OUT/app-$mode.log" 2>&1 &
+  app=$!
+
+  for _ in $(seq 1 120); do
+    if ! kill -0 "$app" 2>/dev/null; then
+      echo "app exited during startup, see $OUT/app-$mode.log" >&2
+      exit 1
+    fi
+    [[ "$(curl -s -o /dev/null -w '%{http_code}' "http://localhost:$PORT/actuator/health")" != "000" ]] && break
+    sleep 1
+  done
+
+  java src/loadtest/java/com/hungerexpress/loadtest/ExecutionModeLoadTest.java \
+    --base "http://localhost:$PORT" --clients "$CLIENTS" --sse "$SSE" \
+    --warmup "$WARMUP" --duration "$DURATION" --label "virtual=$mode" | tee "$OUT/$mode.txt"
+
+  stop_app
+done
@@ -0,0 +1,55 @@
+package com.hungerexpress.auth;
+
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token signing and verification. validateCold is one signature check and JSON parse on the prebuilt
+ * parser, no cache involved; validateWarm hits the cache as repeat requests with the same token do.
+ * validateCacheMiss goes through a zero-sized cache, so it is the cold parse plus the digest, insert
+ * and eviction a first-seen token pays when the cache is full.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtBenchmark {
+
+    JwtService cached;
+    JwtService full;
+    String token;
+
+    @Setup
+    public void setup() {
+        String secret = Base64.getEncoder().encodeToString("benchmark-secret-benchmark-secret-0123456789".getBytes());
+        cached = new JwtService(secret, 3_600_000L, 50_000);
+        full = new JwtService(secret, 3_600_000L, 0);
+        token = cached.generate(Map.of("role", "CUSTOMER", "uid", 42L), "bench@hungerexpress.com");
+    }
+
+    @Benchmark
+    public String generate() {
+        return cached.generate(Map.of("role", "CUSTOMER", "uid", 42L), "bench@hungerexpress.com");
+    }
+
+    @Benchmark
+    public Claims validateCold() {
+        return cached.verify(token);
+    }
+
+    @Benchmark
+    public Claims validateCacheMiss() {
+        return full.parseClaims(token);
+    }
+
+    @Benchmark
+    public Claims validateWarm() {
+        return cached.parseClaims(token);
+    }
+}
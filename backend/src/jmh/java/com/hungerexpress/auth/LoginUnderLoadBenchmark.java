@@ -0,0 +1,60 @@
+package com.hungerexpress.auth;
+
+import com.hungerexpress.orders.BenchFixtures;
+import com.hungerexpress.orders.OrderSummaryDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Login bursts next to order traffic. Logins outnumber cores and either hash on the calling thread
+ * (inline, as servlet threads used to) or through {@link PasswordHashing}; compare the order group's
+ * latency percentiles and the login group's throughput between the two modes.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoginUnderLoadBenchmark {
+
+    @Param({"inline", "isolated"})
+    String mode;
+
+    BCryptPasswordEncoder encoder;
+    PasswordHashing hashing;
+    String hash;
+
+    @Setup
+    public void setup() {
+        encoder = new BCryptPasswordEncoder(10);
+        hashing = new PasswordHashing(encoder, new SimpleMeterRegistry(), 0.5, 1024, 60_000, 1);
+        hash = encoder.encode("benchmark-password");
+    }
+
+    @TearDown
+    public void tearDown() {
+        hashing.shutdown();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(8)
+    public boolean login() {
+        return "inline".equals(mode)
+                ? encoder.matches("benchmark-password", hash)
+                : hashing.matches("benchmark-password", hash);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public List<OrderSummaryDto> order() {
+        // Builds and maps a small page of orders, the CPU side of an order list request
+        return BenchFixtures.summaries(10);
+    }
+}
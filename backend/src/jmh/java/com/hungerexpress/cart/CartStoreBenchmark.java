@@ -0,0 +1,58 @@
+package com.hungerexpress.cart;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CartStore under contention: 8 threads spread over a handful of carts, plus one cart all threads share.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class CartStoreBenchmark {
+
+    static final CartItemDto ITEM = new CartItemDto(1L, "Paneer Tikka", 249.0, null, 1);
+
+    CartStore store;
+
+    @State(Scope.Thread)
+    public static class Caller {
+        String key;
+
+        @Setup
+        public void setup(ThreadParams params) {
+            key = "user:user" + (params.getThreadIndex() % 4) + "@hungerexpress.com";
+        }
+    }
+
+    @Setup
+    public void setup() {
+        store = new CartStore(100_000, 7_200_000L, new SimpleMeterRegistry());
+        store.add("user:shared@hungerexpress.com", ITEM);
+    }
+
+    @Benchmark
+    public List<CartItemDto> snapshot(Caller c) {
+        return store.snapshot(c.key);
+    }
+
+    @Benchmark
+    public List<CartItemDto> addThenClear(Caller c) {
+        List<CartItemDto> items = store.add(c.key, ITEM);
+        store.clear(c.key);
+        return items;
+    }
+
+    @Benchmark
+    public List<CartItemDto> sharedCart() {
+        return store.changeQty("user:shared@hungerexpress.com", 1L, 1);
+    }
+}
@@ -0,0 +1,64 @@
+package com.hungerexpress.coupons;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Subtotal and coupon BigDecimal math from order creation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderMathBenchmark {
+
+    @Param({"1", "10", "50"})
+    int items;
+
+    double[] prices;
+    int[] qtys;
+    BigDecimal subtotal;
+    CouponEngine engine;
+
+    @Setup
+    public void setup() {
+        prices = new double[items];
+        qtys = new int[items];
+        for (int i = 0; i < items; i++) {
+            prices[i] = 99.5 + i;
+            qtys[i] = 1 + i % 3;
+        }
+        subtotal = subtotal();
+        engine = new CouponEngine(null);
+        engine.register("SAVE20", BigDecimal.valueOf(20), null, BigDecimal.valueOf(100), Long.MAX_VALUE);
+        engine.register("FLAT50", null, BigDecimal.valueOf(50), null, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public BigDecimal subtotal() {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (int i = 0; i < prices.length; i++) {
+            sum = sum.add(BigDecimal.valueOf(prices[i]).multiply(BigDecimal.valueOf(qtys[i])));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public CouponEngine.Evaluation percentCoupon() {
+        return engine.evaluate(subtotal, "SAVE20");
+    }
+
+    @Benchmark
+    public CouponEngine.Evaluation amountCoupon() {
+        return engine.evaluate(subtotal, "FLAT50");
+    }
+
+    @Benchmark
+    public CouponEngine.Evaluation unknownCode() {
+        return engine.evaluate(subtotal, "NOPE");
+    }
+}
@@ -0,0 +1,49 @@
+package com.hungerexpress.orders;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic orders shared by the benchmarks.
+ */
+public final class BenchFixtures {
+
+    private BenchFixtures() {}
+
+    public static OrderEntity order(long id, int itemCount) {
+        OrderEntity o = OrderEntity.builder()
+                .id(id)
+                .userId(42L)
+                .status(OrderStatus.PREPARING)
+                .subtotal(BigDecimal.ZERO)
+                .total(BigDecimal.ZERO)
+                .createdAt(Instant.parse("2025-01-01T12:00:00Z").plusSeconds(id))
+                .build();
+        List<OrderItemEntity> its = new ArrayList<>(itemCount);
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < itemCount; i++) {
+            BigDecimal price = BigDecimal.valueOf(99 + i, 0).add(BigDecimal.valueOf(50, 2));
+            its.add(OrderItemEntity.builder()
+                    .id(id * 100 + i)
+                    .order(o)
+                    .menuItemId((long) i)
+                    .name("Dish " + i)
+                    .price(price)
+                    .qty(1 + i % 3)
+                    .build());
+            total = total.add(price.multiply(BigDecimal.valueOf(1 + i % 3)));
+        }
+        o.setItems(its);
+        o.setSubtotal(total);
+        o.setTotal(total);
+        return o;
+    }
+
+    public static List<OrderSummaryDto> summaries(int count) {
+        List<OrderSummaryDto> res = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) res.add(OrdersController.toDto(order(i, 3)));
+        return res;
+    }
+}
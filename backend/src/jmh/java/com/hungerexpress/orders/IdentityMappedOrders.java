@@ -0,0 +1,134 @@
+package com.hungerexpress.orders;
+
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The order write path as it was mapped before pooled sequences: IDENTITY ids on the order, its items
+ * and the outbox event. Benchmark baseline only, on tables of their own; columns are the ones
+ * {@link BenchFixtures} fills.
+ */
+final class IdentityMappedOrders {
+
+    private IdentityMappedOrders() {}
+
+    @Entity
+    @Table(name = "identity_orders")
+    static class Order {
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        Long id;
+
+        @Column(name = "user_id")
+        Long userId;
+
+        @Enumerated(EnumType.STRING)
+        @Column(nullable = false, length = 32)
+        OrderStatus status;
+
+        @Column(nullable = false, precision = 10, scale = 2)
+        BigDecimal subtotal;
+
+        @Column(nullable = false, precision = 10, scale = 2)
+        BigDecimal discount = BigDecimal.ZERO;
+
+        @Column(name = "delivery_fee", nullable = false, precision = 10, scale = 2)
+        BigDecimal deliveryFee = BigDecimal.ZERO;
+
+        @Column(nullable = false, precision = 10, scale = 2)
+        BigDecimal tax = BigDecimal.ZERO;
+
+        @Column(nullable = false, precision = 10, scale = 2)
+        BigDecimal total;
+
+        @Column(name = "created_at", nullable = false)
+        Instant createdAt;
+
+        @OneToMany(mappedBy = "order", cascade = CascadeType.ALL)
+        List<Item> items = new ArrayList<>();
+    }
+
+    @Entity
+    @Table(name = "identity_order_item")
+    static class Item {
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        Long id;
+
+        @ManyToOne(optional = false)
+        @JoinColumn(name = "order_id")
+        Order order;
+
+        @Column(name = "menu_item_id")
+        Long menuItemId;
+
+        @Column(nullable = false)
+        String name;
+
+        @Column(nullable = false, precision = 10, scale = 2)
+        BigDecimal price;
+
+        @Column(nullable = false)
+        Integer qty;
+    }
+
+    @Entity
+    @Table(name = "identity_order_event")
+    static class Event {
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        Long id;
+
+        @Column(name = "order_id", nullable = false)
+        Long orderId;
+
+        @Column(nullable = false, length = 32)
+        String type;
+
+        @Enumerated(EnumType.STRING)
+        @Column(name = "to_status", length = 32)
+        OrderStatus toStatus;
+
+        @Column(name = "created_at", nullable = false)
+        Instant createdAt;
+
+        @Column(name = "next_attempt_at", nullable = false)
+        Instant nextAttemptAt;
+
+        int attempts;
+    }
+
+    /** The fixture order copied into the IDENTITY mapping. */
+    static Order from(OrderEntity src) {
+        Order o = new Order();
+        o.userId = src.getUserId();
+        o.status = src.getStatus();
+        o.subtotal = src.getSubtotal();
+        o.total = src.getTotal();
+        o.createdAt = src.getCreatedAt();
+        for (OrderItemEntity it : src.getItems()) {
+            Item i = new Item();
+            i.order = o;
+            i.menuItemId = it.getMenuItemId();
+            i.name = it.getName();
+            i.price = it.getPrice();
+            i.qty = it.getQty();
+            o.items.add(i);
+        }
+        return o;
+    }
+
+    static Event created(Order o) {
+        Event e = new Event();
+        e.orderId = o.id;
+        e.type = "created";
+        e.toStatus = o.status;
+        e.createdAt = Instant.now();
+        e.nextAttemptAt = e.createdAt;
+        return e;
+    }
+}
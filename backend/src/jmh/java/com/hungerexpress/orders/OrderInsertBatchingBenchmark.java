@@ -0,0 +1,128 @@
+package com.hungerexpress.orders;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Placing an order the way OrderCommands.create does: the order, its items and the "created" outbox
+ * event persisted and committed in one transaction, against in-memory H2.
+ *
+ * IDENTITY is the mapping before the change (IDENTITY ids, no batching, see {@link IdentityMappedOrders});
+ * POOLED is the pooled sequences without batching and POOLED_BATCHED the app as configured
+ * (app.jpa.batch-size 50). Besides latency, the statements and orders counters give JDBC statements
+ * prepared per order; sequence fetches are included and amortised over their allocation block as
+ * they are in the app.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderInsertBatchingBenchmark {
+
+    public enum Mapping { IDENTITY, POOLED, POOLED_BATCHED }
+
+    @Param({"1", "10", "50"})
+    int items;
+
+    @Param({"IDENTITY", "POOLED", "POOLED_BATCHED"})
+    Mapping mapping;
+
+    SessionFactory sessions;
+    Statistics stats;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long statements;
+        public long orders;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            statements = 0;
+            orders = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        Configuration cfg = new Configuration();
+        if (mapping == Mapping.IDENTITY) {
+            cfg.addAnnotatedClass(IdentityMappedOrders.Order.class)
+                    .addAnnotatedClass(IdentityMappedOrders.Item.class)
+                    .addAnnotatedClass(IdentityMappedOrders.Event.class);
+        } else {
+            cfg.addAnnotatedClass(OrderEntity.class)
+                    .addAnnotatedClass(OrderItemEntity.class)
+                    .addAnnotatedClass(OrderEventEntity.class);
+        }
+        sessions = cfg
+                .setProperty(AvailableSettings.JAKARTA_JDBC_URL, "jdbc:h2:mem:batching-" + mapping + ";DB_CLOSE_DELAY=-1")
+                .setProperty(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+                .setProperty(AvailableSettings.GENERATE_STATISTICS, "true")
+                .setProperty(AvailableSettings.STATEMENT_BATCH_SIZE, mapping == Mapping.POOLED_BATCHED ? "50" : "0")
+                .setProperty(AvailableSettings.ORDER_INSERTS, String.valueOf(mapping == Mapping.POOLED_BATCHED))
+                .buildSessionFactory();
+        stats = sessions.getStatistics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        sessions.close();
+    }
+
+    @Benchmark
+    public Object placeOrder(Counters counters) {
+        long before = stats.getPrepareStatementCount();
+        Object id = mapping == Mapping.IDENTITY ? placeIdentity() : placePooled();
+        counters.statements += stats.getPrepareStatementCount() - before;
+        counters.orders++;
+        return id;
+    }
+
+    private Long placePooled() {
+        OrderEntity order = fresh();
+        try (Session s = sessions.openSession()) {
+            Transaction tx = s.beginTransaction();
+            s.persist(order);
+            s.persist(OrderEventEntity.builder()
+                    .orderId(order.getId())
+                    .type("created")
+                    .toStatus(order.getStatus())
+                    .build());
+            tx.commit();
+        }
+        return order.getId();
+    }
+
+    private Long placeIdentity() {
+        IdentityMappedOrders.Order order = IdentityMappedOrders.from(fresh());
+        try (Session s = sessions.openSession()) {
+            Transaction tx = s.beginTransaction();
+            s.persist(order);
+            s.persist(IdentityMappedOrders.created(order));
+            tx.commit();
+        }
+        return order.id;
+    }
+
+    // Fixture order with its ids cleared so the generators assign them
+    private OrderEntity fresh() {
+        OrderEntity o = BenchFixtures.order(0, items);
+        o.setId(null);
+        o.setStatus(OrderStatus.PLACED);
+        o.setDeliveryFee(BigDecimal.ZERO);
+        o.setTax(BigDecimal.ZERO);
+        o.getItems().forEach(it -> it.setId(null));
+        return o;
+    }
+}
@@ -0,0 +1,37 @@
+package com.hungerexpress.orders;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of order list responses (the body of GET /api/orders and friends).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderJsonBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    int size;
+
+    ObjectMapper mapper;
+    List<OrderSummaryDto> orders;
+
+    @Setup
+    public void setup() {
+        mapper = new ObjectMapper();
+        orders = BenchFixtures.summaries(size);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(orders);
+    }
+}
@@ -0,0 +1,32 @@
+package com.hungerexpress.orders;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity -> DTO mapping used by every order endpoint and SSE event.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderMappingBenchmark {
+
+    @Param({"1", "10", "50"})
+    int items;
+
+    OrderEntity order;
+
+    @Setup
+    public void setup() {
+        order = BenchFixtures.order(1L, items);
+    }
+
+    @Benchmark
+    public OrderSummaryDto toDto() {
+        return OrdersController.toDto(order);
+    }
+}
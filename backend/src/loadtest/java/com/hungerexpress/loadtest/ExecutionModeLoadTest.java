@@ -0,0 +1,213 @@
+package com.hungerexpress.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * HTTP load against a running backend, for comparing spring.threads.virtual.enabled=false and true.
+ * loadtest/run.sh starts the app once per mode and runs this against it; it can also be pointed at any
+ * server with the JDK alone: java src/loadtest/java/com/hungerexpress/loadtest/ExecutionModeLoadTest.java
+ *
+ * --clients connections are held for the whole run: --sse of them subscribe to /api/orders/stream
+ * (kanban) and keep the stream open, the rest loop closed over the order list pages (view=active and
+ * view=all, no If-None-Match so every request reads the database) as the signed-up load-test user.
+ * After --warmup seconds, requests completing in the next --duration seconds are counted; the report
+ * gives throughput, p50/p99/max latency, non-2xx counts (503 is the admission cap turning requests
+ * away) and how many streams were still open at the end.
+ */
+public class ExecutionModeLoadTest {
+
+    private static final Pattern TOKEN = Pattern.compile("\"token\"\\s*:\\s*\"([^\"]+)\"");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = options(args);
+        URI base = URI.create(opts.getOrDefault("base", "http://localhost:8080"));
+        int clients = Integer.parseInt(opts.getOrDefault("clients", "1000"));
+        int sse = Math.min(clients, Integer.parseInt(opts.getOrDefault("sse", "500")));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(opts.getOrDefault("warmup", "15")));
+        Duration duration = Duration.ofSeconds(Long.parseLong(opts.getOrDefault("duration", "60")));
+        String label = opts.getOrDefault("label", base.toString());
+
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        String token = signIn(http, base,
+                opts.getOrDefault("email", "loadtest@hungerexpress.local"),
+                opts.getOrDefault("password", "loadtest-password"));
+
+        Run run = new Run();
+        CountDownLatch streamsUp = new CountDownLatch(sse);
+        ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+        for (int i = 0; i < sse; i++) threads.submit(() -> stream(http, base, run, streamsUp));
+        streamsUp.await();
+        System.out.printf("%s: %d/%d streams open, starting %d request clients%n",
+                label, run.streamsOpen.get(), sse, clients - sse);
+
+        run.measureFrom = System.nanoTime() + warmup.toNanos();
+        run.measureUntil = run.measureFrom + duration.toNanos();
+        List<Latencies> perClient = new ArrayList<>();
+        for (int i = 0; i < clients - sse; i++) {
+            Latencies own = new Latencies();
+            perClient.add(own);
+            String path = i % 2 == 0 ? "/api/orders?view=active&limit=20" : "/api/orders?view=all&limit=50";
+            threads.submit(() -> requests(http, base.resolve(path), token, run, own));
+        }
+        Thread.sleep(Duration.ofNanos(Math.max(0, run.measureUntil - System.nanoTime())));
+        run.stopped = true;
+        int openAtEnd = run.streamsOpen.get();
+        Thread.sleep(1000); // requests in flight at the deadline are past it and not recorded; let them return
+        report(label, duration, perClient, run, sse, openAtEnd);
+        // The open streams block in socket reads that an interrupt does not end; exit rather than join them
+        System.exit(0);
+    }
+
+    static final class Run {
+        volatile long measureFrom;
+        volatile long measureUntil = Long.MAX_VALUE;
+        volatile boolean stopped;
+        final AtomicInteger streamsOpen = new AtomicInteger();
+        final AtomicInteger streamsFailed = new AtomicInteger();
+        final AtomicLong streamEvents = new AtomicLong();
+        final AtomicLong ioErrors = new AtomicLong();
+        final Map<Integer, AtomicLong> statuses = new ConcurrentHashMap<>();
+    }
+
+    // Growable per-client buffer of latencies in nanoseconds, read once the run is over
+    static final class Latencies {
+        long[] nanos = new long[4096];
+        int n;
+
+        void add(long v) {
+            if (n == nanos.length) nanos = Arrays.copyOf(nanos, n * 2);
+            nanos[n++] = v;
+        }
+    }
+
+    private static void requests(HttpClient http, URI uri, String token, Run run, Latencies own) {
+        HttpRequest req = HttpRequest.newBuilder(uri)
+                .header("Authorization", "Bearer " + token)
+                .timeout(Duration.ofSeconds(30))
+                .GET().build();
+        while (!run.stopped) {
+            long t0 = System.nanoTime();
+            int status;
+            try {
+                status = http.send(req, HttpResponse.BodyHandlers.discarding()).statusCode();
+            } catch (IOException e) {
+                status = -1;
+            } catch (InterruptedException e) {
+                return;
+            }
+            long t1 = System.nanoTime();
+            if (t0 < run.measureFrom || t1 > run.measureUntil) continue;
+            if (status == -1) {
+                run.ioErrors.incrementAndGet();
+            } else if (status / 100 == 2) {
+                own.add(t1 - t0);
+            } else {
+                run.statuses.computeIfAbsent(status, s -> new AtomicLong()).incrementAndGet();
+            }
+        }
+    }
+
+    private static void stream(HttpClient http, URI base, Run run, CountDownLatch up) {
+        HttpRequest req = HttpRequest.newBuilder(base.resolve("/api/orders/stream?topics=kanban"))
+                .header("Accept", "text/event-stream")
+                .GET().build();
+        boolean counted = false;
+        try {
+            HttpResponse<Stream<String>> res = http.send(req, HttpResponse.BodyHandlers.ofLines());
+            if (res.statusCode() != 200) {
+                run.streamsFailed.incrementAndGet();
+                return;
+            }
+            run.streamsOpen.incrementAndGet();
+            counted = true;
+            up.countDown();
+            // Blocks in the body until the server closes the stream or the run is torn down
+            try (Stream<String> lines = res.body()) {
+                lines.forEach(line -> { if (line.startsWith("data:")) run.streamEvents.incrementAndGet(); });
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!counted) run.streamsFailed.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (counted) run.streamsOpen.decrementAndGet();
+            else up.countDown();
+        }
+    }
+
+    // Sign up the load-test user if it does not exist yet, then log in for a bearer token
+    private static String signIn(HttpClient http, URI base, String email, String password) throws Exception {
+        String creds = "\"email\":\"" + email + "\",\"password\":\"" + password + "\"";
+        post(http, base.resolve("/api/auth/signup"), "{" + creds + ",\"fullName\":\"Load Test\"}");
+        HttpResponse<String> login = post(http, base.resolve("/api/auth/login"), "{" + creds + "}");
+        Matcher m = TOKEN.matcher(login.body());
+        if (login.statusCode() != 200 || !m.find()) {
+            throw new IllegalStateException("login as " + email + " failed: HTTP " + login.statusCode());
+        }
+        return m.group(1);
+    }
+
+    private static HttpResponse<String> post(HttpClient http, URI uri, String json) throws Exception {
+        return http.send(HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static void report(String label, Duration duration, List<Latencies> perClient, Run run, int sse, int openAtEnd) {
+        int total = perClient.stream().mapToInt(l -> l.n).sum();
+        long[] all = new long[total];
+        int at = 0;
+        for (Latencies l : perClient) {
+            System.arraycopy(l.nanos, 0, all, at, l.n);
+            at += l.n;
+        }
+        Arrays.sort(all);
+        long failed = run.ioErrors.get() + run.statuses.values().stream().mapToLong(AtomicLong::get).sum();
+        System.out.printf("%s%n", label);
+        System.out.printf("  clients      %d (%d request loops, %d SSE streams)%n", perClient.size() + sse, perClient.size(), sse);
+        System.out.printf("  throughput   %.1f req/s over %ds%n", total / (double) duration.toSeconds(), duration.toSeconds());
+        System.out.printf("  latency ms   p50 %.1f  p99 %.1f  max %.1f%n", millis(all, 0.50), millis(all, 0.99), millis(all, 1.0));
+        System.out.printf("  ok %d  failed %d  io errors %d  by status %s%n", total, failed, run.ioErrors.get(), new HashMap<>(run.statuses));
+        System.out.printf("  streams      %d/%d open at end, %d failed to open, %d events received%n",
+                openAtEnd, sse, run.streamsFailed.get(), run.streamEvents.get());
+    }
+
+    private static double millis(long[] sorted, double q) {
+        if (sorted.length == 0) return Double.NaN;
+        int i = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(i, sorted.length - 1))] / 1e6;
+    }
+
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) throw new IllegalArgumentException("expected --name value, got " + args[i]);
+            opts.put(args[i].substring(2), args[i + 1]);
+        }
+        return opts;
+    }
+}
@@ -0,0 +1,140 @@
+package com.hungerexpress.cart;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Many threads hammering one store: per-cart updates must not be lost, and the cap and bytes
+ * accounting must hold while carts are being created and evicted underneath each other.
+ */
+class CartStoreConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int OPS = 2_000;
+
+    private static final CartItemDto PANEER = new CartItemDto(1L, "Paneer Tikka", 249.0, null, 1);
+    private static final CartItemDto NAAN = new CartItemDto(2L, "Butter Naan", 49.0, null, 1);
+
+    @Test
+    void concurrentAddsToOneCartAreAllKept() throws Exception {
+        CartStore store = store(100);
+        String key = "user:shared@hungerexpress.com";
+
+        race(t -> {
+            for (int i = 0; i < OPS; i++) store.add(key, i % 2 == 0 ? PANEER : NAAN);
+        });
+
+        List<CartItemDto> items = store.snapshot(key);
+        assertThat(items).hasSize(2);
+        assertThat(items.stream().mapToInt(CartItemDto::qty).sum()).isEqualTo(THREADS * OPS);
+    }
+
+    @Test
+    void concurrentQuantityChangesAreAllKept() throws Exception {
+        CartStore store = store(100);
+        String key = "user:shared@hungerexpress.com";
+        store.add(key, PANEER);
+
+        race(t -> {
+            for (int i = 0; i < OPS; i++) store.changeQty(key, PANEER.id(), 1);
+        });
+
+        assertThat(store.snapshot(key)).singleElement()
+                .extracting(CartItemDto::qty).isEqualTo(1 + THREADS * OPS);
+    }
+
+    @Test
+    void changingACartThatIsNotThereDoesNotCreateIt() {
+        CartStore store = store(100);
+
+        assertThat(store.changeQty("user:nobody@hungerexpress.com", 1L, 1)).isEmpty();
+        assertThat(store.remove("user:nobody@hungerexpress.com", 1L)).isEmpty();
+        assertThat(store.size()).isZero();
+        assertThat(store.bytes()).isZero();
+    }
+
+    @Test
+    void capAndBytesHoldUnderChurn() throws Exception {
+        int max = 500;
+        CartStore store = store(max);
+
+        race(t -> {
+            for (int i = 0; i < OPS; i++) {
+                String key = "guest:" + t + ":" + i;
+                store.add(key, PANEER);
+                if (i % 3 == 0) store.changeQty(key, PANEER.id(), 2);
+                if (i % 5 == 0) store.remove(key, PANEER.id());
+                if (i % 7 == 0) store.clear(key);
+            }
+        });
+
+        // Writers that find eviction already running carry on, so allow one insert per thread of slack
+        assertThat(store.size()).isLessThanOrEqualTo(max + THREADS);
+        assertThat(store.bytes()).isPositive();
+
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 0; i < OPS; i++) store.clear("guest:" + t + ":" + i);
+        }
+        assertThat(store.size()).isZero();
+        assertThat(store.bytes()).isZero();
+    }
+
+    @Test
+    void evictionKeepsRecentlyUsedCarts() throws Exception {
+        int max = 1_000;
+        CartStore store = store(max);
+        String hot = "user:regular@hungerexpress.com";
+        store.add(hot, PANEER);
+
+        for (int i = 0; i < 5 * max; i++) {
+            store.add("guest:" + i, NAAN);
+            if (i % 50 == 0) {
+                // Keep the hot cart's access time ahead of the bulk being evicted
+                Thread.sleep(1);
+                store.snapshot(hot);
+            }
+        }
+
+        assertThat(store.snapshot(hot)).containsExactly(PANEER);
+        assertThat(store.size()).isLessThanOrEqualTo(max);
+    }
+
+    private static CartStore store(int maxCarts) {
+        return new CartStore(maxCarts, 7_200_000L, new SimpleMeterRegistry());
+    }
+
+    private interface Worker {
+        void run(int thread) throws Exception;
+    }
+
+    private static void race(Worker worker) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                Callable<Void> task = () -> {
+                    start.await();
+                    worker.run(thread);
+                    return null;
+                };
+                results.add(pool.submit(task));
+            }
+            start.countDown();
+            for (Future<Void> r : results) r.get();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.hungerexpress.coupons;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Discount arithmetic against rules registered directly, so no database or Spring context is needed.
+ */
+class CouponEngineTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    private CouponEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        engine = new CouponEngine(null);
+        engine.register("SAVE20", BigDecimal.valueOf(20), null, null, Long.MAX_VALUE);
+        engine.register("FLAT50", null, BigDecimal.valueOf(50), null, Long.MAX_VALUE);
+        engine.register("BIG100", null, BigDecimal.valueOf(100), BigDecimal.valueOf(500), Long.MAX_VALUE);
+        engine.register("COMBO", BigDecimal.TEN, BigDecimal.valueOf(25), null, Long.MAX_VALUE);
+        engine.register("LASTDAY", BigDecimal.valueOf(15), null, null, NOW);
+    }
+
+    @Test
+    void percentOffIsTakenFromTheSubtotal() {
+        CouponEngine.Evaluation e = engine.evaluate(new BigDecimal("250.00"), "SAVE20", NOW);
+
+        assertThat(e.applied()).isTrue();
+        assertThat(e.code()).isEqualTo("SAVE20");
+        assertThat(e.discount()).isEqualByComparingTo("50.00");
+    }
+
+    @Test
+    void amountOffIsAFixedDiscount() {
+        assertThat(engine.evaluate(new BigDecimal("250.00"), "FLAT50", NOW).discount())
+                .isEqualByComparingTo("50");
+    }
+
+    @Test
+    void percentAndAmountAddUp() {
+        assertThat(engine.evaluate(new BigDecimal("300"), "COMBO", NOW).discount())
+                .isEqualByComparingTo("55");
+    }
+
+    @Test
+    void belowMinimumAmountDoesNotApply() {
+        assertThat(engine.evaluate(new BigDecimal("499.99"), "BIG100", NOW)).isEqualTo(CouponEngine.Evaluation.NONE);
+        assertThat(engine.evaluate(new BigDecimal("500"), "BIG100", NOW).discount()).isEqualByComparingTo("100");
+    }
+
+    @Test
+    void expiredCouponDoesNotApply() {
+        assertThat(engine.evaluate(new BigDecimal("100"), "LASTDAY", NOW).discount()).isEqualByComparingTo("15");
+        assertThat(engine.evaluate(new BigDecimal("100"), "LASTDAY", NOW + 1)).isEqualTo(CouponEngine.Evaluation.NONE);
+    }
+
+    @Test
+    void discountIsCappedAtTheSubtotal() {
+        CouponEngine.Evaluation e = engine.evaluate(new BigDecimal("30"), "FLAT50", NOW);
+
+        assertThat(e.applied()).isTrue();
+        assertThat(e.discount()).isEqualByComparingTo("30");
+    }
+
+    @Test
+    void typedCodesAreCaseInsensitiveAndTrimmed() {
+        assertThat(engine.evaluate(new BigDecimal("100"), "save20", NOW).code()).isEqualTo("SAVE20");
+        assertThat(engine.evaluate(new BigDecimal("100"), "  Save20 ", NOW).code()).isEqualTo("SAVE20");
+    }
+
+    @Test
+    void codesDifferingOnlyByCaseAreNotMerged() {
+        engine.register("Flat50", null, BigDecimal.valueOf(5), null, Long.MAX_VALUE);
+
+        assertThat(engine.size()).isEqualTo(6);
+        assertThat(engine.evaluate(new BigDecimal("250"), "flat50", NOW).discount()).isEqualByComparingTo("50");
+    }
+
+    @Test
+    void missingOrUnknownCodeDoesNotApply() {
+        BigDecimal subtotal = new BigDecimal("100");
+
+        assertThat(engine.evaluate(subtotal, null, NOW)).isEqualTo(CouponEngine.Evaluation.NONE);
+        assertThat(engine.evaluate(subtotal, "  ", NOW)).isEqualTo(CouponEngine.Evaluation.NONE);
+        assertThat(engine.evaluate(subtotal, "NOPE", NOW)).isEqualTo(CouponEngine.Evaluation.NONE);
+        assertThat(engine.evaluate(null, "SAVE20", NOW)).isEqualTo(CouponEngine.Evaluation.NONE);
+    }
+}
@@ -0,0 +1,107 @@
+package com.hungerexpress.orders;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Conditional claim updates against a real database. Not transactional itself, so each claim
+ * commits on its own and the racing threads see each other's writes.
+ */
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OrderClaimConcurrencyTest {
+
+    private static final int AGENTS = 16;
+
+    @Autowired
+    OrderRepository orders;
+
+    @AfterEach
+    void cleanUp() {
+        orders.deleteAll();
+    }
+
+    @Test
+    void concurrentClaimsHaveExactlyOneWinner() throws Exception {
+        Long id = placed().getId();
+        ExecutorService pool = Executors.newFixedThreadPool(AGENTS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        try {
+            for (long agent = 1; agent <= AGENTS; agent++) {
+                long agentId = agent;
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return orders.claim(id, agentId, Instant.now());
+                }));
+            }
+            start.countDown();
+            int won = 0;
+            for (Future<Integer> r : results) won += r.get();
+            assertThat(won).isEqualTo(1);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        OrderEntity o = orders.findById(id).orElseThrow();
+        assertThat(o.getStatus()).isEqualTo(OrderStatus.ACCEPTED);
+        assertThat(o.getAssignedTo()).isBetween(1L, (long) AGENTS);
+    }
+
+    @Test
+    void agentCanAcceptAnOrderTheyAssignedToThemselves() {
+        Long id = placed().getId();
+        assertThat(orders.assignIfFree(id, 7L)).isEqualTo(1);
+
+        assertThat(orders.claim(id, 7L, Instant.now())).isEqualTo(1);
+        assertThat(orders.findById(id).orElseThrow().getStatus()).isEqualTo(OrderStatus.ACCEPTED);
+    }
+
+    @Test
+    void otherAgentCannotClaimAnAssignedOrder() {
+        Long id = placed().getId();
+        assertThat(orders.assignIfFree(id, 7L)).isEqualTo(1);
+
+        assertThat(orders.claim(id, 8L, Instant.now())).isZero();
+        assertThat(orders.assignIfFree(id, 8L)).isZero();
+    }
+
+    @Test
+    void finishedOrdersCannotBeAssigned() {
+        OrderEntity o = placed();
+        o.setStatus(OrderStatus.DELIVERED);
+        Long id = orders.save(o).getId();
+
+        assertThat(orders.assignIfFree(id, 7L)).isZero();
+    }
+
+    private OrderEntity placed() {
+        return orders.save(OrderEntity.builder()
+                .userId(42L)
+                .status(OrderStatus.PLACED)
+                .subtotal(BigDecimal.TEN)
+                .total(BigDecimal.TEN)
+                .deliveryFee(BigDecimal.ZERO)
+                .tax(BigDecimal.ZERO)
+                .createdAt(Instant.now())
+                .build());
+    }
+}